@@ -6,16 +6,24 @@ import com.mongodb.MongoException;
 import lombok.extern.log4j.Log4j2;
 import net.hypixel.nerdbot.api.badge.Badge;
 import net.hypixel.nerdbot.api.bot.Bot;
+import net.hypixel.nerdbot.api.database.model.user.stats.ActivityHistory;
+import net.hypixel.nerdbot.api.database.model.user.stats.ChannelActivityEntry;
 import net.hypixel.nerdbot.bot.NerdBot;
 import net.hypixel.nerdbot.util.Util;
+import net.hypixel.nerdbot.util.gson.adapter.ActivityHistoryTypeAdapter;
 import net.hypixel.nerdbot.util.gson.adapter.BadgeTypeAdapter;
+import net.hypixel.nerdbot.util.gson.adapter.ChannelActivityEntryTypeAdapter;
 import net.hypixel.nerdbot.util.gson.adapter.InstantTypeAdapter;
+import net.hypixel.nerdbot.util.gson.adapter.LocalDateTypeAdapter;
 import net.hypixel.nerdbot.util.gson.adapter.UUIDTypeAdapter;
+import net.hypixel.nerdbot.util.gson.adapter.YearMonthTypeAdapter;
 import sun.misc.Signal;
 
 import javax.security.auth.login.LoginException;
 import java.io.IOException;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
@@ -30,6 +38,10 @@ public class NerdBotApp {
         .registerTypeAdapter(UUID.class, new UUIDTypeAdapter())
         .registerTypeAdapter(Instant.class, new InstantTypeAdapter())
         .registerTypeAdapter(Badge.class, new BadgeTypeAdapter())
+        .registerTypeAdapter(ActivityHistory.class, new ActivityHistoryTypeAdapter())
+        .registerTypeAdapter(YearMonth.class, new YearMonthTypeAdapter())
+        .registerTypeAdapter(LocalDate.class, new LocalDateTypeAdapter())
+        .registerTypeAdapter(ChannelActivityEntry.class, new ChannelActivityEntryTypeAdapter())
         .create();
 
     private static Bot bot;
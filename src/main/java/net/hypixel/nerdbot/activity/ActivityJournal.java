@@ -0,0 +1,307 @@
+package net.hypixel.nerdbot.activity;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import net.hypixel.nerdbot.NerdBotApp;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of every {@link ActivityRecord} submitted to the {@link ActivityPipeline}, so activity that has
+ * not been written to the database yet survives a crash.
+ * <br><br>
+ * Records are appended with increasing sequence numbers to memory-mapped segment files, which makes persisting a record
+ * a sequential write to memory. Every entry is checksummed so a write torn by a crash ends the segment instead of being
+ * replayed. Once the records up to a sequence number have been written to the database, that sequence number is saved as
+ * the checkpoint and every segment before it is deleted. On startup, the records after the checkpoint are replayed.
+ * <br><br>
+ * Each journal has a random ID saved with its checkpoint, so sequence numbers from another journal, or from an earlier
+ * journal in a directory that has since been cleared, can be told apart from its own.
+ */
+@Log4j2
+public class ActivityJournal {
+
+    /**
+     * The size of each segment file
+     */
+    public static final int SEGMENT_SIZE = Integer.getInteger("activity.journal.segmentMegabytes", 8) * 1024 * 1024;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    // Entry length, checksum and sequence number
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES;
+    private static final Map<String, Class<? extends ActivityRecord>> RECORD_TYPES = new HashMap<>();
+
+    static {
+        for (Class<?> type : ActivityRecord.class.getPermittedSubclasses()) {
+            RECORD_TYPES.put(type.getSimpleName(), type.asSubclass(ActivityRecord.class));
+        }
+    }
+
+    private final Path directory;
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment activeSegment;
+    @Getter
+    private long lastSequence;
+    @Getter
+    private long checkpoint;
+    /**
+     * The ID of this journal, or null until it has been opened
+     */
+    @Getter
+    private String journalId;
+
+    public ActivityJournal(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Read the checkpoint and hand every record after it to the consumer, then start a new segment for new records
+     *
+     * @param consumer Receives the sequence number and record of each entry after the checkpoint, in order
+     *
+     * @return The amount of records replayed
+     */
+    public synchronized int open(BiConsumer<Long, ActivityRecord> consumer) throws IOException {
+        Files.createDirectories(directory);
+        readCheckpoint();
+        lastSequence = checkpoint;
+        int replayed = 0;
+
+        List<Path> segmentFiles;
+        try (Stream<Path> files = Files.list(directory)) {
+            segmentFiles = files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+
+        for (Path file : segmentFiles) {
+            long lastInSegment = -1L;
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+                while (buffer.remaining() >= HEADER_SIZE) {
+                    int length = buffer.getInt();
+                    int checksum = buffer.getInt();
+                    long sequence = buffer.getLong();
+
+                    if (length <= 0 || length > buffer.remaining()) {
+                        break; // End of the written entries
+                    }
+
+                    byte[] payload = new byte[length];
+                    buffer.get(payload);
+
+                    if (checksum(payload) != checksum) {
+                        log.warn("Activity journal entry " + sequence + " in " + file.getFileName() + " is corrupt, skipping the rest of the segment");
+                        break;
+                    }
+
+                    lastInSegment = sequence;
+                    lastSequence = Math.max(lastSequence, sequence);
+
+                    if (sequence > checkpoint) {
+                        ActivityRecord record = decode(payload);
+
+                        if (record != null) {
+                            consumer.accept(sequence, record);
+                            replayed++;
+                        }
+                    }
+                }
+            }
+
+            segments.add(new Segment(file, lastInSegment, null));
+        }
+
+        rollSegment();
+        // Saved right away, so the ID of a new journal is known before any of its records are stored with a user
+        writeCheckpoint(checkpoint);
+        log.info("Opened activity journal " + journalId + " at " + directory + " (checkpoint " + checkpoint + ", replayed " + replayed + " records)");
+        return replayed;
+    }
+
+    /**
+     * Append a record with the next sequence number
+     *
+     * @return The sequence number of the record
+     */
+    public synchronized long append(ActivityRecord record) throws IOException {
+        byte[] payload = encode(record);
+        long sequence = lastSequence + 1;
+
+        if (activeSegment.buffer.remaining() < HEADER_SIZE + payload.length) {
+            rollSegment();
+
+            if (activeSegment.buffer.remaining() < HEADER_SIZE + payload.length) {
+                throw new IOException("Activity record of " + payload.length + " bytes does not fit in a journal segment");
+            }
+        }
+
+        MappedByteBuffer buffer = activeSegment.buffer;
+        // Written before the length so a crash mid-write never leaves a complete looking entry behind
+        int start = buffer.position();
+        buffer.position(start + Integer.BYTES);
+        buffer.putInt(checksum(payload));
+        buffer.putLong(sequence);
+        buffer.put(payload);
+        buffer.putInt(start, payload.length);
+
+        lastSequence = sequence;
+        activeSegment.lastSequence = sequence;
+        return sequence;
+    }
+
+    /**
+     * Save a new checkpoint and delete every segment that only holds records up to it
+     *
+     * @param sequence Every record up to and including this sequence number has been written to the database
+     */
+    public synchronized void checkpoint(long sequence) throws IOException {
+        if (sequence <= checkpoint) {
+            return;
+        }
+
+        activeSegment.buffer.force();
+        writeCheckpoint(sequence);
+        checkpoint = sequence;
+
+        segments.removeIf(segment -> {
+            if (segment == activeSegment || segment.lastSequence > sequence) {
+                return false;
+            }
+
+            try {
+                Files.deleteIfExists(segment.file);
+                return true;
+            } catch (IOException exception) {
+                log.warn("Failed to delete activity journal segment " + segment.file, exception);
+                return false;
+            }
+        });
+    }
+
+    public synchronized void close() {
+        if (activeSegment != null) {
+            activeSegment.buffer.force();
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        if (activeSegment != null) {
+            activeSegment.buffer.force();
+        }
+
+        // Named by the first sequence number so the segments sort in order
+        Path file = directory.resolve(String.format("%020d", lastSequence + 1) + SEGMENT_SUFFIX);
+
+        // A segment with this name can only hold a torn entry, as the name is past the last complete one
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            activeSegment = new Segment(file, -1L, channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE));
+        }
+
+        segments.removeIf(segment -> segment.file.equals(file));
+        segments.add(activeSegment);
+    }
+
+    /**
+     * Read the journal ID and checkpoint. A checkpoint without an ID gets a new one, so sequence numbers stored with
+     * users by a previous journal are not mistaken for this journal's.
+     */
+    private void readCheckpoint() throws IOException {
+        Path checkpointFile = directory.resolve(CHECKPOINT_FILE);
+        journalId = UUID.randomUUID().toString();
+        checkpoint = 0L;
+
+        if (!Files.exists(checkpointFile)) {
+            return;
+        }
+
+        String[] parts = Files.readString(checkpointFile, StandardCharsets.UTF_8).trim().split("\\s+");
+
+        try {
+            if (parts.length == 2) {
+                checkpoint = Long.parseLong(parts[1]);
+                journalId = parts[0];
+            } else {
+                // Written before journals had an ID, so it only holds the sequence number
+                checkpoint = Long.parseLong(parts[0]);
+            }
+        } catch (NumberFormatException exception) {
+            log.warn("Activity journal checkpoint is corrupt, replaying every record");
+        }
+    }
+
+    private void writeCheckpoint(long sequence) throws IOException {
+        // Write to a temporary file first so a crash mid-write never leaves a corrupt checkpoint behind
+        Path checkpointFile = directory.resolve(CHECKPOINT_FILE);
+        Path temporaryFile = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        Files.writeString(temporaryFile, journalId + "\n" + sequence, StandardCharsets.UTF_8);
+        Files.move(temporaryFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] encode(ActivityRecord record) {
+        JsonObject json = new JsonObject();
+        json.addProperty("type", record.getClass().getSimpleName());
+        json.add("record", NerdBotApp.GSON.toJsonTree(record));
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Nullable
+    private static ActivityRecord decode(byte[] payload) {
+        try {
+            JsonObject json = JsonParser.parseString(new String(payload, StandardCharsets.UTF_8)).getAsJsonObject();
+            Class<? extends ActivityRecord> type = RECORD_TYPES.get(json.get("type").getAsString());
+
+            if (type == null) {
+                log.warn("Skipping activity journal entry of unknown type " + json.get("type") + ", known types are " + Arrays.toString(RECORD_TYPES.keySet().toArray()));
+                return null;
+            }
+
+            return NerdBotApp.GSON.fromJson(json.get("record"), type);
+        } catch (JsonParseException | IllegalStateException exception) {
+            log.warn("Skipping unreadable activity journal entry", exception);
+            return null;
+        }
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static class Segment {
+
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private long lastSequence;
+
+        private Segment(Path file, long lastSequence, @Nullable MappedByteBuffer buffer) {
+            this.file = file;
+            this.lastSequence = lastSequence;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,540 @@
+package net.hypixel.nerdbot.activity;
+
+import lombok.extern.log4j.Log4j2;
+import net.hypixel.nerdbot.NerdBotApp;
+import net.hypixel.nerdbot.api.database.model.user.DiscordUser;
+import net.hypixel.nerdbot.api.database.model.user.stats.LastActivity;
+import net.hypixel.nerdbot.api.repository.WriteBehindQueue;
+import net.hypixel.nerdbot.cache.suggestion.Suggestion;
+import net.hypixel.nerdbot.metrics.PrometheusMetrics;
+import net.hypixel.nerdbot.repository.DiscordUserRepository;
+import net.hypixel.nerdbot.util.Util;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies {@link ActivityRecord}s to users on writer threads, so event listeners only have to capture the activity and
+ * never wait on repository lookups or other listeners.
+ * <br><br>
+ * Users are split between {@link #WRITER_THREADS} shards by ID, each with its own bounded queue and writer thread, so
+ * every user has a single writer and records for a user are applied in order. Records are applied in batches while
+ * holding the user's repository lock, and each user in a batch is looked up and marked dirty once. When a queue is
+ * full new records are dropped instead of blocking the event thread.
+ * <br><br>
+ * Records are also appended to an {@link ActivityJournal} when one is configured. Each user stores the journal ID and
+ * sequence number of the last record applied to it, so records replayed after a crash are only applied to users that
+ * had not been written to the database with them. Records that were not replayed are always applied.
+ * <br><br>
+ * The journal is opened by {@link #start(Path)}, but nothing is applied until {@link #startWriters()} is called once
+ * the users have been loaded, so replayed records are never applied to users the load would then skip.
+ */
+@Log4j2
+public class ActivityPipeline {
+
+    /**
+     * The maximum amount of records waiting to be applied, split evenly between the shards
+     */
+    public static final int QUEUE_CAPACITY = Integer.getInteger("activity.queue.capacity", 10_000);
+
+    /**
+     * The maximum amount of records applied in one batch
+     */
+    public static final int BATCH_SIZE = Integer.getInteger("activity.batch.size", 500);
+
+    /**
+     * The amount of shards, each applying records on its own thread
+     */
+    public static final int WRITER_THREADS = Math.max(1, Integer.getInteger("activity.writer.threads", 2));
+
+    /**
+     * The interval between each checkpoint of the activity journal in seconds
+     */
+    public static final long CHECKPOINT_INTERVAL_SECONDS = Long.getLong("activity.journal.checkpointSeconds", 60L);
+
+    private final Shard[] shards = new Shard[WRITER_THREADS];
+    private boolean started;
+    private volatile boolean running;
+    @Nullable
+    private volatile ActivityJournal journal;
+    private ScheduledExecutorService checkpointScheduler;
+
+    public ActivityPipeline() {
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(i, Math.max(1, QUEUE_CAPACITY / shards.length));
+        }
+    }
+
+    /**
+     * Start accepting records. If a journal directory is given, records in the journal that were not written to the
+     * database before the bot stopped are read back to be applied again, and every new record is appended to the journal.
+     * <br><br>
+     * Records are only queued until {@link #startWriters()} is called.
+     *
+     * @param journalDirectory The directory of the {@link ActivityJournal}, or null to run without one
+     */
+    public synchronized void start(@Nullable Path journalDirectory) {
+        if (started) {
+            return;
+        }
+
+        started = true;
+
+        if (journalDirectory == null) {
+            return;
+        }
+
+        ActivityJournal activityJournal = new ActivityJournal(journalDirectory);
+
+        try {
+            // Nothing else is submitted yet, and each shard applies its replayed records before its queue, so they keep their order
+            activityJournal.open((sequence, record) -> shardFor(record).replay(new Entry(activityJournal.getJournalId(), sequence, record, true)));
+        } catch (IOException exception) {
+            log.error("Failed to open the activity journal at " + journalDirectory + ", activity will only be saved with users", exception);
+            return;
+        }
+
+        for (Shard shard : shards) {
+            shard.appliedSequence = activityJournal.getCheckpoint();
+        }
+
+        journal = activityJournal;
+        checkpointScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "activity-journal-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checkpointScheduler.scheduleWithFixedDelay(this::checkpoint, CHECKPOINT_INTERVAL_SECONDS, CHECKPOINT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Start the writer threads, which apply the replayed records followed by everything queued since {@link #start(Path)}.
+     * Called once the users have been loaded into the cache.
+     */
+    public synchronized void startWriters() {
+        if (!started || running) {
+            return;
+        }
+
+        running = true;
+        for (Shard shard : shards) {
+            shard.start();
+        }
+    }
+
+    /**
+     * Stop the writer threads after applying every record that is still queued. Records that were never applied stay
+     * in the journal and are replayed on the next start.
+     */
+    public synchronized void stop() {
+        if (!started) {
+            return;
+        }
+
+        started = false;
+
+        if (running) {
+            running = false;
+            for (Shard shard : shards) {
+                shard.thread.interrupt();
+            }
+
+            for (Shard shard : shards) {
+                try {
+                    shard.thread.join(TimeUnit.SECONDS.toMillis(10));
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        if (journal != null) {
+            checkpointScheduler.shutdown();
+            checkpoint();
+            journal.close();
+        }
+    }
+
+    /**
+     * Queue a record to be applied, dropping it if its shard's queue is full
+     *
+     * @return True if the record was queued
+     */
+    public boolean submit(ActivityRecord record) {
+        Shard shard = shardFor(record);
+        ActivityJournal activityJournal = journal;
+        boolean queued;
+
+        if (activityJournal == null) {
+            queued = shard.offer(new Entry(null, 0L, record, false));
+        } else {
+            // Appended and queued together, so each shard receives its records in sequence order
+            synchronized (activityJournal) {
+                queued = shard.queue.remainingCapacity() > 0 && shard.offer(new Entry(activityJournal.getJournalId(), append(activityJournal, record), record, false));
+            }
+        }
+
+        if (!queued) {
+            PrometheusMetrics.ACTIVITY_RECORDS_DROPPED.labels(record.getClass().getSimpleName()).inc();
+            log.debug("Activity queue " + shard.index + " is full, dropped " + record);
+            return false;
+        }
+
+        PrometheusMetrics.ACTIVITY_QUEUE_SIZE.set(getQueueSize());
+        return true;
+    }
+
+    public int getQueueSize() {
+        int size = 0;
+        for (Shard shard : shards) {
+            size += shard.queue.size();
+        }
+        return size;
+    }
+
+    private Shard shardFor(ActivityRecord record) {
+        return shards[Math.floorMod(record.userId().hashCode(), shards.length)];
+    }
+
+    /**
+     * @return The sequence number of the record, or 0 if it could not be appended
+     */
+    private long append(ActivityJournal activityJournal, ActivityRecord record) {
+        try {
+            return activityJournal.append(record);
+        } catch (IOException exception) {
+            log.error("Failed to append " + record + " to the activity journal", exception);
+            return 0L;
+        }
+    }
+
+    /**
+     * Write every user changed by an applied record to the database, then move the journal's checkpoint up to the
+     * records that are now stored with the users
+     */
+    private void checkpoint() {
+        ActivityJournal activityJournal = journal;
+        if (activityJournal == null) {
+            return;
+        }
+
+        long sequence;
+
+        synchronized (activityJournal) {
+            sequence = activityJournal.getLastSequence();
+
+            // Every record up to this point in a shard with nothing queued has been applied and marked dirty
+            for (Shard shard : shards) {
+                if (shard.inFlight.get() > 0) {
+                    sequence = Math.min(sequence, shard.appliedSequence);
+                }
+            }
+        }
+
+        try {
+            WriteBehindQueue<DiscordUser> writeBehindQueue = NerdBotApp.getBot().getDatabase().getRepositoryManager().getRepository(DiscordUserRepository.class).getWriteBehindQueue();
+            writeBehindQueue.flush();
+
+            if (writeBehindQueue.isLastFlushFailed()) {
+                log.warn("Not moving the activity journal checkpoint as users could not be written to the database");
+                return;
+            }
+
+            activityJournal.checkpoint(sequence);
+        } catch (Exception exception) {
+            log.error("Failed to checkpoint the activity journal", exception);
+        }
+    }
+
+    private void applyBatch(List<Entry> batch) {
+        PrometheusMetrics.ACTIVITY_QUEUE_SIZE.set(getQueueSize());
+
+        DiscordUserRepository discordUserRepository = NerdBotApp.getBot().getDatabase().getRepositoryManager().getRepository(DiscordUserRepository.class);
+        // Looked up once per batch instead of streaming the config array for every message
+        Set<String> blacklistedChannels = new HashSet<>(Arrays.asList(NerdBotApp.getBot().getConfig().getChannelConfig().getBlacklistedChannels()));
+        // Grouped by user so each user is locked once per batch, keeping the order of their records
+        Map<String, List<Entry>> entriesByUser = new LinkedHashMap<>();
+
+        for (Entry entry : batch) {
+            entriesByUser.computeIfAbsent(entry.record().userId(), userId -> new ArrayList<>()).add(entry);
+        }
+
+        entriesByUser.forEach((userId, entries) -> {
+            try {
+                DiscordUser discordUser = discordUserRepository.findById(userId);
+
+                if (discordUser != null) {
+                    // Marked dirty under the same lock, so a remote change can never overwrite the activity before it is written
+                    discordUserRepository.updateIfChanged(discordUser, user -> {
+                        boolean modified = false;
+
+                        for (Entry entry : entries) {
+                            try {
+                                modified |= apply(entry, user.getLastActivity(), blacklistedChannels);
+                            } catch (Exception exception) {
+                                log.error("Failed to apply activity " + entry.record(), exception);
+                            }
+                        }
+
+                        return modified;
+                    });
+                }
+            } catch (Exception exception) {
+                log.error("Failed to apply " + entries.size() + " activity records for user " + userId, exception);
+            }
+
+            for (Entry entry : entries) {
+                PrometheusMetrics.ACTIVITY_APPLY_LATENCY_SECONDS.observe((System.currentTimeMillis() - entry.record().timestamp()) / 1_000D);
+            }
+        });
+    }
+
+    /**
+     * @return True if the user was modified
+     */
+    private boolean apply(Entry entry, LastActivity lastActivity, Set<String> blacklistedChannels) {
+        if (entry.sequence() > 0) {
+            boolean sameJournal = entry.journalId().equals(lastActivity.getActivityJournalId());
+
+            // Replayed from the journal, but already stored with the user before the bot stopped
+            if (entry.replayed() && sameJournal && entry.sequence() <= lastActivity.getActivityJournalSequence()) {
+                return false;
+            }
+
+            lastActivity.setActivityJournalId(entry.journalId());
+            lastActivity.setActivityJournalSequence(sameJournal ? Math.max(entry.sequence(), lastActivity.getActivityJournalSequence()) : entry.sequence());
+        }
+
+        ActivityRecord record = entry.record();
+        long time = record.timestamp();
+
+        if (record instanceof ActivityRecord.Message message) {
+            // Ignore channel if blacklisted for activity tracking
+            if (blacklistedChannels.contains(message.channelId())) {
+                return false;
+            }
+
+            Suggestion.ChannelType channelType = Util.getSuggestionType(message.channelName());
+
+            // New Suggestion Comments
+            if (message.threadComment()) {
+                channelType = Util.getForumSuggestionType(message.parentChannelId());
+
+                switch (channelType) {
+                    case NORMAL -> {
+                        lastActivity.getSuggestionCommentHistory().add(time);
+                        log.info("Updating suggestion comment activity date for {} to {}", message.userName(), time);
+                    }
+                    case ALPHA -> {
+                        lastActivity.getAlphaSuggestionCommentHistory().add(time);
+                        log.info("Updating alpha suggestion comment activity and last alpha activity date for {} to {}", message.userName(), time);
+                    }
+                    case PROJECT -> {
+                        lastActivity.getProjectSuggestionCommentHistory().add(time);
+                        log.info("Updating project suggestion comment activity and last project activity date for {} to {}", message.userName(), time);
+                    }
+                    default -> {
+                    }
+                }
+            }
+
+            // Alpha/Project-specific Messages
+            if (channelType == Suggestion.ChannelType.ALPHA) {
+                lastActivity.setLastAlphaActivity(time);
+            } else if (channelType == Suggestion.ChannelType.PROJECT) {
+                lastActivity.setLastProjectActivity(time);
+            }
+
+            // Global Messages
+            log.info("Updating last global activity date for " + message.userName() + " to " + time);
+            lastActivity.setLastGlobalActivity(time);
+
+            // Update Channel Message History
+            if (message.parentChannelId() == null) {
+                lastActivity.addChannelHistory(message.channelId(), message.channelName(), 1, time);
+            } else {
+                lastActivity.addChannelHistory(message.parentChannelId(), message.parentChannelName(), 1, time);
+            }
+
+            return true;
+        }
+
+        if (record instanceof ActivityRecord.SuggestionCreated created) {
+            switch (Util.getForumSuggestionType(created.forumChannelId())) {
+                case NORMAL -> {
+                    lastActivity.getSuggestionCreationHistory().add(time);
+                    log.info("Updating new suggestion activity date for {} to {}", created.userName(), time);
+                }
+                case ALPHA -> {
+                    lastActivity.getAlphaSuggestionCreationHistory().add(time);
+                    lastActivity.setLastAlphaActivity(time);
+                    log.info("Updating new alpha suggestion activity date for {} to {}", created.userName(), time);
+                }
+                case PROJECT -> {
+                    lastActivity.getProjectSuggestionCreationHistory().add(time);
+                    lastActivity.setLastProjectActivity(time);
+                    log.info("Updating new project suggestion activity date for {} to {}", created.userName(), time);
+                }
+                default -> {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        if (record instanceof ActivityRecord.SuggestionVote vote) {
+            switch (Util.getForumSuggestionType(vote.forumChannelId())) {
+                case NORMAL -> {
+                    lastActivity.getSuggestionVoteHistory().add(time);
+                    log.info("Updating suggestion voting activity date for " + vote.userName() + " to " + time);
+                }
+                case ALPHA -> {
+                    lastActivity.getAlphaSuggestionVoteHistory().add(time);
+                    log.info("Updating alpha suggestion voting activity date for " + vote.userName() + " to " + time);
+                }
+                case PROJECT -> {
+                    lastActivity.getProjectSuggestionVoteHistory().add(time);
+                    log.info("Updating project suggestion voting activity date for " + vote.userName() + " to " + time);
+                }
+                default -> {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        if (record instanceof ActivityRecord.VoiceSession session) {
+            lastActivity.addVoiceSession(time, session.durationMillis());
+
+            if ((session.durationMillis() / 1_000L) <= NerdBotApp.getBot().getConfig().getVoiceThreshold()) {
+                return true;
+            }
+
+            Suggestion.ChannelType channelType = Util.getSuggestionType(session.channelName());
+
+            if (channelType == Suggestion.ChannelType.ALPHA) {
+                lastActivity.setAlphaVoiceJoinDate(time);
+                log.info("Updating last alpha voice activity for {} to {}", session.userName(), time);
+            } else if (channelType == Suggestion.ChannelType.PROJECT) {
+                lastActivity.setProjectVoiceJoinDate(time);
+                log.info("Updating last project voice activity for {} to {}", session.userName(), time);
+            } else {
+                lastActivity.setLastVoiceChannelJoinDate(time);
+                log.info("Updating last global voice activity for {} to {}", session.userName(), time);
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @param journalId The ID of the journal the record was appended to, or null without a journal
+     * @param sequence  The sequence number of the record in the journal, or 0 if it was not appended
+     * @param replayed  Whether the record was replayed from the journal on startup
+     */
+    private record Entry(@Nullable String journalId, long sequence, ActivityRecord record, boolean replayed) {
+    }
+
+    private class Shard implements Runnable {
+
+        private final int index;
+        private final BlockingQueue<Entry> queue;
+        // Records read back from the journal, applied before anything in the queue
+        private List<Entry> replayed = new ArrayList<>();
+        // Records queued or being applied
+        private final AtomicInteger inFlight = new AtomicInteger();
+        // The sequence number of the last applied record, all earlier records in this shard have been applied too
+        private volatile long appliedSequence;
+        private Thread thread;
+
+        private Shard(int index, int capacity) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        private void start() {
+            thread = new Thread(this, "activity-writer-" + index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private boolean offer(Entry entry) {
+            inFlight.incrementAndGet();
+
+            if (!queue.offer(entry)) {
+                inFlight.decrementAndGet();
+                return false;
+            }
+
+            return true;
+        }
+
+        private void replay(Entry entry) {
+            inFlight.incrementAndGet();
+            replayed.add(entry);
+        }
+
+        @Override
+        public void run() {
+            List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+
+            for (int i = 0; i < replayed.size(); i += BATCH_SIZE) {
+                batch.addAll(replayed.subList(i, Math.min(i + BATCH_SIZE, replayed.size())));
+                applyAndTrack(batch);
+            }
+
+            if (!replayed.isEmpty()) {
+                log.info("Activity writer " + index + " replayed " + replayed.size() + " records from the activity journal");
+            }
+
+            replayed = List.of();
+
+            while (running) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException exception) {
+                    break; // Stopped, apply whatever is left below
+                }
+
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                applyAndTrack(batch);
+            }
+
+            while (queue.drainTo(batch, BATCH_SIZE) > 0) {
+                applyAndTrack(batch);
+            }
+
+            log.info("Activity writer " + index + " stopped");
+        }
+
+        private void applyAndTrack(List<Entry> batch) {
+            applyBatch(batch);
+
+            for (Entry entry : batch) {
+                appliedSequence = Math.max(appliedSequence, entry.sequence());
+            }
+
+            inFlight.addAndGet(-batch.size());
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package net.hypixel.nerdbot.activity;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A single piece of user activity captured from a Discord event. Records only hold IDs, names and timestamps so they
+ * can be created cheaply on the event thread and applied to the user later by the {@link ActivityPipeline}.
+ */
+public sealed interface ActivityRecord {
+
+    String userId();
+
+    String userName();
+
+    long timestamp();
+
+    /**
+     * @param parentChannelId   The ID of the channel the thread the message was sent in belongs to, or null if it was not sent in a thread
+     * @param parentChannelName The name of the parent channel, or null if the message was not sent in a thread
+     * @param threadComment     Whether the message was a reply in a thread rather than the message that started it
+     */
+    record Message(String userId, String userName, long timestamp, String channelId, String channelName,
+                   @Nullable String parentChannelId, @Nullable String parentChannelName, boolean threadComment) implements ActivityRecord {
+    }
+
+    record SuggestionCreated(String userId, String userName, long timestamp, String forumChannelId) implements ActivityRecord {
+    }
+
+    record SuggestionVote(String userId, String userName, long timestamp, String forumChannelId, String threadId) implements ActivityRecord {
+    }
+
+    record VoiceSession(String userId, String userName, long timestamp, String channelName, long durationMillis) implements ActivityRecord {
+    }
+}
@@ -0,0 +1,203 @@
+package net.hypixel.nerdbot.activity;
+
+import com.google.gson.JsonParseException;
+import lombok.extern.log4j.Log4j2;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.channel.middleman.AudioChannel;
+import net.hypixel.nerdbot.NerdBotApp;
+import net.hypixel.nerdbot.metrics.PrometheusMetrics;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Tracks the voice sessions that are currently open and hands each finished session to the {@link ActivityPipeline}.
+ * <br><br>
+ * Open sessions are saved to a journal file every {@link #CHECKPOINT_INTERVAL_SECONDS} seconds. On startup, sessions
+ * of members that are still in the same voice channel continue from the journal. Sessions of members that left
+ * while the bot was offline are closed at the time of the last checkpoint.
+ */
+@Log4j2
+public class VoiceSessionTracker {
+
+    /**
+     * The interval between each save of the open sessions in seconds
+     */
+    public static final long CHECKPOINT_INTERVAL_SECONDS = Long.getLong("voice.checkpoint.intervalSeconds", 30L);
+
+    private final ActivityPipeline activityPipeline;
+    private final Map<String, OpenSession> sessions = new ConcurrentHashMap<>();
+    private final Object journalLock = new Object();
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> checkpointTask;
+
+    public VoiceSessionTracker(ActivityPipeline activityPipeline) {
+        this.activityPipeline = activityPipeline;
+    }
+
+    /**
+     * Restore the sessions saved in the journal against the voice channels members are currently in, then start saving
+     * the open sessions regularly
+     */
+    public synchronized void start(Guild guild) {
+        if (scheduler != null) {
+            return;
+        }
+
+        restore(guild);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "voice-session-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checkpointTask = scheduler.scheduleWithFixedDelay(this::checkpoint, CHECKPOINT_INTERVAL_SECONDS, CHECKPOINT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Save the open sessions one last time. Sessions are left open so they can be continued after a restart.
+     */
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+
+        checkpointTask.cancel(false);
+        scheduler.shutdown();
+        scheduler = null;
+        checkpoint();
+    }
+
+    public void join(Member member, AudioChannel channel, long time) {
+        OpenSession previous = sessions.put(member.getId(), new OpenSession(member.getId(), member.getEffectiveName(), channel.getId(), channel.getName(), time));
+
+        if (previous != null) {
+            close(previous, time); // Missed the leave event
+        }
+
+        PrometheusMetrics.VOICE_CONNECTIONS_AMOUNT.labels(channel.getName()).inc();
+        PrometheusMetrics.VOICE_SESSIONS_OPEN.set(sessions.size());
+    }
+
+    public void leave(Member member, long time) {
+        OpenSession session = sessions.remove(member.getId());
+
+        if (session != null) {
+            close(session, time);
+        }
+
+        PrometheusMetrics.VOICE_SESSIONS_OPEN.set(sessions.size());
+    }
+
+    public int getOpenSessionCount() {
+        return sessions.size();
+    }
+
+    private void close(OpenSession session, long time) {
+        long duration = Math.max(0L, time - session.startTime());
+
+        PrometheusMetrics.VOICE_TIME_SECONDS.labels(session.channelName()).inc(TimeUnit.MILLISECONDS.toSeconds(duration));
+        activityPipeline.submit(new ActivityRecord.VoiceSession(session.userId(), session.userName(), time, session.channelName(), duration));
+    }
+
+    private void restore(Guild guild) {
+        long time = System.currentTimeMillis();
+        Journal journal = readJournal();
+        Map<String, OpenSession> saved = new HashMap<>();
+
+        if (journal != null && journal.sessions() != null) {
+            journal.sessions().forEach(session -> saved.put(session.userId(), session));
+        }
+
+        int continued = 0;
+
+        for (AudioChannel channel : Stream.concat(guild.getVoiceChannels().stream(), guild.getStageChannels().stream()).toList()) {
+            for (Member member : channel.getMembers()) {
+                if (member.getUser().isBot()) {
+                    continue;
+                }
+
+                OpenSession savedSession = saved.remove(member.getId());
+                boolean sameChannel = savedSession != null && savedSession.channelId().equals(channel.getId());
+                OpenSession session = new OpenSession(member.getId(), member.getEffectiveName(), channel.getId(), channel.getName(), sameChannel ? savedSession.startTime() : time);
+
+                // Joined since the bot started, which is newer than anything in the journal
+                if (sessions.putIfAbsent(member.getId(), session) == null && sameChannel) {
+                    continued++;
+                }
+
+                if (savedSession != null && !sameChannel) {
+                    close(savedSession, journal.checkpointTime());
+                }
+            }
+        }
+
+        // Left while the bot was offline, so the last checkpoint is the latest time they are known to have been connected
+        saved.values().forEach(session -> close(session, journal.checkpointTime()));
+        PrometheusMetrics.VOICE_SESSIONS_OPEN.set(sessions.size());
+
+        log.info("Restored " + sessions.size() + " voice sessions (" + continued + " continued from the journal, " + saved.size() + " closed)");
+    }
+
+    private void checkpoint() {
+        synchronized (journalLock) {
+            Path journalFile = getJournalFile();
+            Journal journal = new Journal(System.currentTimeMillis(), new ArrayList<>(sessions.values()));
+
+            try {
+                Path parent = journalFile.toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+
+                // Write to a temporary file first so a crash mid-write never leaves a corrupt journal behind
+                Path temporaryFile = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+                Files.writeString(temporaryFile, NerdBotApp.GSON.toJson(journal), StandardCharsets.UTF_8);
+                Files.move(temporaryFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException exception) {
+                log.error("Failed to save voice sessions to " + journalFile, exception);
+            }
+        }
+    }
+
+    @Nullable
+    private Journal readJournal() {
+        Path journalFile = getJournalFile();
+
+        if (!Files.exists(journalFile)) {
+            return null;
+        }
+
+        try {
+            return NerdBotApp.GSON.fromJson(Files.readString(journalFile, StandardCharsets.UTF_8), Journal.class);
+        } catch (IOException | JsonParseException exception) {
+            log.warn("Failed to read voice sessions from " + journalFile + ", starting without them", exception);
+            return null;
+        }
+    }
+
+    private Path getJournalFile() {
+        return Path.of(NerdBotApp.getBot().getConfig().getVoiceSessionJournalFile());
+    }
+
+    private record OpenSession(String userId, String userName, String channelId, String channelName, long startTime) {
+    }
+
+    private record Journal(long checkpointTime, List<OpenSession> sessions) {
+    }
+}
@@ -0,0 +1,270 @@
+package net.hypixel.nerdbot.api.database.codec;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A {@link JsonReader} that reads straight from a {@link BsonReader}, so Gson type adapters can decode BSON without
+ * building a JSON string or a {@link com.google.gson.JsonElement} tree first.
+ * <br><br>
+ * Numbers are read as numbers and object IDs as their hex string. Gson's map adapter can not read map keys from this
+ * reader, so maps have to be read through a {@link GsonCodec}, which reads them itself.
+ */
+class BsonJsonReader extends JsonReader {
+
+    private static final Reader UNREADABLE_READER = new Reader() {
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void close() {
+            throw new AssertionError();
+        }
+    };
+
+    private final BsonReader reader;
+    // Whether each open container is an array, innermost last
+    private final Deque<Boolean> arrays = new ArrayDeque<>();
+    private State state = State.START;
+    private BsonType currentType;
+
+    BsonJsonReader(BsonReader reader) {
+        super(UNREADABLE_READER);
+        this.reader = reader;
+    }
+
+    @Override
+    public JsonToken peek() throws IOException {
+        if (state == State.TYPE) {
+            currentType = reader.readBsonType();
+
+            if (currentType == BsonType.END_OF_DOCUMENT) {
+                state = State.END;
+            } else {
+                // Array element names are skipped by the BSON reader
+                state = Boolean.TRUE.equals(arrays.peekLast()) ? State.VALUE : State.NAME;
+            }
+        }
+
+        return switch (state) {
+            // Entities are always stored as documents
+            case START -> JsonToken.BEGIN_OBJECT;
+            case NAME -> JsonToken.NAME;
+            case VALUE -> switch (currentType) {
+                case DOCUMENT -> JsonToken.BEGIN_OBJECT;
+                case ARRAY -> JsonToken.BEGIN_ARRAY;
+                case STRING, OBJECT_ID, SYMBOL -> JsonToken.STRING;
+                case INT32, INT64, DOUBLE, DECIMAL128, DATE_TIME -> JsonToken.NUMBER;
+                case BOOLEAN -> JsonToken.BOOLEAN;
+                case NULL, UNDEFINED -> JsonToken.NULL;
+                default -> throw new IllegalStateException("Unsupported BSON type " + currentType);
+            };
+            case END -> arrays.getLast() ? JsonToken.END_ARRAY : JsonToken.END_OBJECT;
+            default -> JsonToken.END_DOCUMENT;
+        };
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        expect(JsonToken.BEGIN_OBJECT);
+        reader.readStartDocument();
+        arrays.addLast(false);
+        state = State.TYPE;
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        expect(JsonToken.END_OBJECT);
+        reader.readEndDocument();
+        endContainer();
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        expect(JsonToken.BEGIN_ARRAY);
+        reader.readStartArray();
+        arrays.addLast(true);
+        state = State.TYPE;
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        expect(JsonToken.END_ARRAY);
+        reader.readEndArray();
+        endContainer();
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        JsonToken token = peek();
+        return token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY && token != JsonToken.END_DOCUMENT;
+    }
+
+    @Override
+    public String nextName() throws IOException {
+        expect(JsonToken.NAME);
+        state = State.VALUE;
+        return reader.readName();
+    }
+
+    @Override
+    public String nextString() throws IOException {
+        String value = switch (valueType(JsonToken.STRING)) {
+            case STRING -> reader.readString();
+            case SYMBOL -> reader.readSymbol();
+            case OBJECT_ID -> reader.readObjectId().toHexString();
+            case INT32 -> String.valueOf(reader.readInt32());
+            case INT64 -> String.valueOf(reader.readInt64());
+            case DOUBLE -> String.valueOf(reader.readDouble());
+            case DECIMAL128 -> reader.readDecimal128().toString();
+            case DATE_TIME -> String.valueOf(reader.readDateTime());
+            default -> throw unexpected(JsonToken.STRING);
+        };
+
+        state = State.TYPE;
+        return value;
+    }
+
+    @Override
+    public boolean nextBoolean() throws IOException {
+        expect(JsonToken.BOOLEAN);
+        boolean value = reader.readBoolean();
+        state = State.TYPE;
+        return value;
+    }
+
+    @Override
+    public void nextNull() throws IOException {
+        expect(JsonToken.NULL);
+
+        if (currentType == BsonType.UNDEFINED) {
+            reader.readUndefined();
+        } else {
+            reader.readNull();
+        }
+
+        state = State.TYPE;
+    }
+
+    @Override
+    public double nextDouble() throws IOException {
+        double value = switch (valueType(JsonToken.NUMBER)) {
+            case DOUBLE -> reader.readDouble();
+            case INT32 -> reader.readInt32();
+            case INT64 -> reader.readInt64();
+            case DATE_TIME -> reader.readDateTime();
+            case DECIMAL128 -> reader.readDecimal128().doubleValue();
+            case STRING -> Double.parseDouble(reader.readString());
+            default -> throw unexpected(JsonToken.NUMBER);
+        };
+
+        state = State.TYPE;
+        return value;
+    }
+
+    @Override
+    public long nextLong() throws IOException {
+        long value = switch (valueType(JsonToken.NUMBER)) {
+            case INT32 -> reader.readInt32();
+            case INT64 -> reader.readInt64();
+            case DATE_TIME -> reader.readDateTime();
+            case DOUBLE -> toLong(reader.readDouble());
+            case DECIMAL128 -> reader.readDecimal128().bigDecimalValue().longValueExact();
+            case STRING -> Long.parseLong(reader.readString());
+            default -> throw unexpected(JsonToken.NUMBER);
+        };
+
+        state = State.TYPE;
+        return value;
+    }
+
+    @Override
+    public int nextInt() throws IOException {
+        long value = nextLong();
+
+        if ((int) value != value) {
+            throw new NumberFormatException("Expected an int but was " + value);
+        }
+
+        return (int) value;
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+        JsonToken token = peek();
+
+        if (token == JsonToken.NAME) {
+            reader.skipName();
+        } else if (state != State.VALUE) {
+            throw new IllegalStateException("Expected a value but was " + token);
+        }
+
+        reader.skipValue();
+        state = State.TYPE;
+    }
+
+    @Override
+    public void close() {
+        // The BSON reader belongs to the caller
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName();
+    }
+
+    private void expect(JsonToken expected) throws IOException {
+        if (peek() != expected) {
+            throw unexpected(expected);
+        }
+    }
+
+    private BsonType valueType(JsonToken expected) throws IOException {
+        peek();
+
+        if (state != State.VALUE) {
+            throw unexpected(expected);
+        }
+
+        return currentType;
+    }
+
+    private void endContainer() {
+        arrays.removeLast();
+        state = arrays.isEmpty() ? State.DONE : State.TYPE;
+    }
+
+    private IllegalStateException unexpected(JsonToken expected) throws IOException {
+        return new IllegalStateException("Expected " + expected + " but was " + peek());
+    }
+
+    private static long toLong(double value) {
+        long result = (long) value;
+
+        if (result != value) {
+            throw new NumberFormatException("Expected a long but was " + value);
+        }
+
+        return result;
+    }
+
+    private enum State {
+        START,
+        // The type of the next element has to be read
+        TYPE,
+        NAME,
+        VALUE,
+        // The end of the innermost container was reached
+        END,
+        DONE
+    }
+}
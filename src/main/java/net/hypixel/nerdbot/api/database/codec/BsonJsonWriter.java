@@ -0,0 +1,208 @@
+package net.hypixel.nerdbot.api.database.codec;
+
+import com.google.gson.JsonParser;
+import com.google.gson.internal.bind.TypeAdapters;
+import com.google.gson.stream.JsonWriter;
+import org.bson.BsonWriter;
+import org.bson.Document;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * A {@link JsonWriter} that writes straight to a {@link BsonWriter}, so Gson type adapters can encode BSON without
+ * building a {@link com.google.gson.JsonElement} tree or a JSON string first.
+ * <br><br>
+ * Numbers are written the same way {@link Document#parse(String)} would read them (32-bit integers when they fit,
+ * 64-bit integers otherwise and doubles for floating point values), so documents written through this class are
+ * identical to the ones that were previously written through a JSON round trip.
+ */
+class BsonJsonWriter extends JsonWriter {
+
+    private static final Writer UNWRITABLE_WRITER = new Writer() {
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void flush() {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void close() {
+            throw new AssertionError();
+        }
+    };
+
+    private final BsonWriter writer;
+    // Names are only written along with their value, so null values can be left out like JsonWriter does
+    private String deferredName;
+
+    BsonJsonWriter(BsonWriter writer) {
+        super(UNWRITABLE_WRITER);
+        this.writer = writer;
+    }
+
+    @Override
+    public JsonWriter beginObject() {
+        writeDeferredName();
+        writer.writeStartDocument();
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() {
+        checkNoDeferredName();
+        writer.writeEndDocument();
+        return this;
+    }
+
+    @Override
+    public JsonWriter beginArray() {
+        writeDeferredName();
+        writer.writeStartArray();
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() {
+        checkNoDeferredName();
+        writer.writeEndArray();
+        return this;
+    }
+
+    @Override
+    public JsonWriter name(String name) {
+        Objects.requireNonNull(name, "name == null");
+        checkNoDeferredName();
+        deferredName = name;
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(String value) {
+        if (value == null) {
+            return nullValue();
+        }
+
+        writeDeferredName();
+        writer.writeString(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter jsonValue(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+
+        TypeAdapters.JSON_ELEMENT.write(this, JsonParser.parseString(value));
+        return this;
+    }
+
+    @Override
+    public JsonWriter nullValue() {
+        if (deferredName != null) {
+            if (!getSerializeNulls()) {
+                deferredName = null;
+                return this;
+            }
+
+            writeDeferredName();
+        }
+
+        writer.writeNull();
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) {
+        writeDeferredName();
+        writer.writeBoolean(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Boolean value) {
+        return value == null ? nullValue() : value(value.booleanValue());
+    }
+
+    @Override
+    public JsonWriter value(float value) {
+        return value((double) value);
+    }
+
+    @Override
+    public JsonWriter value(double value) {
+        writeDeferredName();
+        writer.writeDouble(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) {
+        writeDeferredName();
+
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            writer.writeInt32((int) value);
+        } else {
+            writer.writeInt64(value);
+        }
+
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Number value) {
+        if (value == null) {
+            return nullValue();
+        }
+
+        if (isFloatingPoint(value)) {
+            return value(value.doubleValue());
+        }
+
+        return value(value.longValue());
+    }
+
+    @Override
+    public void flush() {
+        // The BSON writer belongs to the caller
+    }
+
+    @Override
+    public void close() {
+        // The BSON writer belongs to the caller
+    }
+
+    private void writeDeferredName() {
+        if (deferredName != null) {
+            writer.writeName(deferredName);
+            deferredName = null;
+        }
+    }
+
+    private void checkNoDeferredName() {
+        if (deferredName != null) {
+            throw new IllegalStateException("Dangling name: " + deferredName);
+        }
+    }
+
+    private static boolean isFloatingPoint(Number number) {
+        if (number instanceof Double || number instanceof Float || number instanceof BigDecimal) {
+            return true;
+        }
+
+        if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+            return false;
+        }
+
+        // Lazily parsed numbers keep their original text, so check it for a decimal part
+        String text = number.toString();
+        return text.contains(".") || text.contains("e") || text.contains("E");
+    }
+}
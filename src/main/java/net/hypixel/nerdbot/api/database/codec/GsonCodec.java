@@ -0,0 +1,116 @@
+package net.hypixel.nerdbot.api.database.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.internal.$Gson$Types;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.bson.BsonReader;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Map;
+
+/**
+ * A {@link Codec} that reads and writes entities using the type adapters registered on a {@link Gson} instance,
+ * streaming the values straight between BSON and the type adapters without building a JSON string or a
+ * {@link com.google.gson.JsonElement} tree in between.
+ *
+ * @param <T> The type of the entity
+ */
+public class GsonCodec<T> implements Codec<T> {
+
+    private final Class<T> encoderClass;
+    private final Gson gson;
+
+    public GsonCodec(Class<T> encoderClass, Gson gson) {
+        this.encoderClass = encoderClass;
+        this.gson = gson.newBuilder()
+            .registerTypeAdapterFactory(new BsonMapTypeAdapterFactory())
+            .create();
+    }
+
+    @Override
+    public T decode(BsonReader reader, DecoderContext decoderContext) {
+        return gson.fromJson(new BsonJsonReader(reader), encoderClass);
+    }
+
+    @Override
+    public void encode(BsonWriter writer, T value, EncoderContext encoderContext) {
+        gson.toJson(value, encoderClass, new BsonJsonWriter(writer));
+    }
+
+    @Override
+    public Class<T> getEncoderClass() {
+        return encoderClass;
+    }
+
+    /**
+     * Gson's map adapter reads object keys through an internal hook that only works on its own readers, so maps
+     * stored as documents are read here instead. Keys are converted by the key type's adapter like Gson does, and
+     * everything else is left to Gson's map adapter.
+     */
+    private static class BsonMapTypeAdapterFactory implements TypeAdapterFactory {
+
+        @Override
+        public <M> TypeAdapter<M> create(Gson gson, TypeToken<M> typeToken) {
+            if (!Map.class.isAssignableFrom(typeToken.getRawType())) {
+                return null;
+            }
+
+            TypeAdapter<M> delegate = gson.getDelegateAdapter(this, typeToken);
+            Type[] keyAndValueTypes = $Gson$Types.getMapKeyAndValueTypes(typeToken.getType(), typeToken.getRawType());
+            TypeAdapter<?> keyAdapter = gson.getAdapter(TypeToken.get(keyAndValueTypes[0]));
+            TypeAdapter<?> valueAdapter = gson.getAdapter(TypeToken.get(keyAndValueTypes[1]));
+
+            return new TypeAdapter<>() {
+                @Override
+                public void write(JsonWriter out, M value) throws IOException {
+                    delegate.write(out, value);
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public M read(JsonReader in) throws IOException {
+                    if (!(in instanceof BsonJsonReader) || in.peek() != JsonToken.BEGIN_OBJECT) {
+                        return delegate.read(in);
+                    }
+
+                    // Gson's adapter creates an empty map of the right type
+                    M map = delegate.fromJsonTree(new JsonObject());
+                    Map<Object, Object> entries = (Map<Object, Object>) map;
+
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        Object key = readKey(in.nextName());
+
+                        if (entries.put(key, valueAdapter.read(in)) != null) {
+                            throw new JsonSyntaxException("duplicate key: " + key);
+                        }
+                    }
+                    in.endObject();
+
+                    return map;
+                }
+
+                private Object readKey(String name) {
+                    try {
+                        return keyAdapter.fromJsonTree(new JsonPrimitive(name));
+                    } catch (RuntimeException exception) {
+                        throw new JsonSyntaxException("Invalid map key: " + name, exception);
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package net.hypixel.nerdbot.api.database.model.user.stats;
+
+import java.util.Arrays;
+
+/**
+ * Counts activity in fixed width time buckets, keeping a fixed amount of the most recent buckets.
+ * <br><br>
+ * The buckets are a ring indexed by the bucket number since the epoch, so recording activity in the current bucket is
+ * a single increment and older buckets are reused as time moves forward. The array is only allocated once activity
+ * has been recorded.
+ */
+public class ActivityBuckets {
+
+    private final long bucketMillis;
+    private final int bucketCount;
+    private int[] counts;
+    private long newestBucket;
+
+    public ActivityBuckets(long bucketMillis, int bucketCount) {
+        this.bucketMillis = bucketMillis;
+        this.bucketCount = bucketCount;
+    }
+
+    /**
+     * Record activity, ignoring it if it is older than the oldest kept bucket
+     */
+    public void add(long timestamp, int amount) {
+        long bucket = Math.floorDiv(timestamp, bucketMillis);
+
+        if (counts == null) {
+            counts = new int[bucketCount];
+            newestBucket = bucket;
+        }
+
+        advanceTo(bucket);
+
+        if (bucket > newestBucket - bucketCount) {
+            counts[slot(bucket)] += amount;
+        }
+    }
+
+    /**
+     * Move the newest bucket forward to the given time, clearing the buckets that fall out of the kept range
+     *
+     * @return The amount of activity that was cleared
+     */
+    public int advance(long timestamp) {
+        return counts == null ? 0 : advanceTo(Math.floorDiv(timestamp, bucketMillis));
+    }
+
+    /**
+     * @return The time the oldest recorded activity falls out of the kept range, or {@link Long#MAX_VALUE} if there
+     * is no activity
+     */
+    public long getExpiryTime() {
+        if (counts == null) {
+            return Long.MAX_VALUE;
+        }
+
+        for (long bucket = newestBucket - bucketCount + 1; bucket <= newestBucket; bucket++) {
+            if (counts[slot(bucket)] != 0) {
+                // Cleared once the bucket that reuses its slot becomes the newest
+                return (bucket + bucketCount) * bucketMillis;
+            }
+        }
+
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Sum the buckets that start at or after the given time. The bucket containing the time is left out unless it
+     * starts exactly at it, so the sum never includes activity from before the time but may miss up to one bucket of
+     * activity right after it.
+     *
+     * @return The activity recorded in every bucket starting at or after the given time
+     */
+    public int sumSince(long timestamp) {
+        if (counts == null) {
+            return 0;
+        }
+
+        long firstBucket = -Math.floorDiv(-timestamp, bucketMillis);
+        long from = Math.max(firstBucket, newestBucket - bucketCount + 1);
+        int total = 0;
+
+        for (long bucket = from; bucket <= newestBucket; bucket++) {
+            total += counts[slot(bucket)];
+        }
+
+        return total;
+    }
+
+    public long getNewestBucket() {
+        return newestBucket;
+    }
+
+    /**
+     * @return The kept buckets oldest first, without the empty buckets before the first recorded activity
+     */
+    public int[] toCounts() {
+        if (counts == null) {
+            return new int[0];
+        }
+
+        int[] ordered = new int[bucketCount];
+        int first = bucketCount;
+
+        for (int i = 0; i < bucketCount; i++) {
+            ordered[i] = counts[slot(newestBucket - bucketCount + 1 + i)];
+
+            if (ordered[i] != 0 && first == bucketCount) {
+                first = i;
+            }
+        }
+
+        return Arrays.copyOfRange(ordered, first, bucketCount);
+    }
+
+    /**
+     * Replace the buckets with ones produced by {@link #toCounts()}
+     *
+     * @param newestBucket The number of the newest bucket since the epoch
+     * @param ordered      The buckets oldest first, ending with the newest bucket
+     */
+    public void restore(long newestBucket, int[] ordered) {
+        if (ordered.length == 0) {
+            counts = null;
+            return;
+        }
+
+        counts = new int[bucketCount];
+        this.newestBucket = newestBucket;
+
+        int kept = Math.min(ordered.length, bucketCount);
+        for (int i = 0; i < kept; i++) {
+            counts[slot(newestBucket - i)] = ordered[ordered.length - 1 - i];
+        }
+    }
+
+    private int advanceTo(long bucket) {
+        if (bucket <= newestBucket) {
+            return 0;
+        }
+
+        int cleared = 0;
+
+        for (long stale = Math.max(newestBucket + 1, bucket - bucketCount + 1); stale <= bucket; stale++) {
+            int slot = slot(stale);
+            cleared += counts[slot];
+            counts[slot] = 0;
+        }
+
+        newestBucket = bucket;
+        return cleared;
+    }
+
+    private int slot(long bucket) {
+        return (int) Math.floorMod(bucket, (long) bucketCount);
+    }
+}
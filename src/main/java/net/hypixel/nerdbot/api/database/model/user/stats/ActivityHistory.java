@@ -0,0 +1,95 @@
+package net.hypixel.nerdbot.api.database.model.user.stats;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Activity counts in hourly buckets for the last {@link #HOURLY_BUCKETS} hours and daily buckets for the last
+ * {@link #DAILY_BUCKETS} days, along with the exact time of the latest activity.
+ * <br><br>
+ * Memory per history is bounded no matter how active a user is, and counting the activity in a period sums at most
+ * one bucket per hour or day. Periods of up to {@link #HOURLY_BUCKETS} hours are counted to the hour, longer periods
+ * to the day. Buckets are UTC aligned, and a bucket is only counted if it starts inside the period, so a count never
+ * includes activity from before the period but may leave out the first hour or day of it.
+ */
+public class ActivityHistory {
+
+    public static final int HOURLY_BUCKETS = 48;
+    public static final int DAILY_BUCKETS = 31;
+    public static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+    public static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final ActivityBuckets hourly = new ActivityBuckets(HOUR_MILLIS, HOURLY_BUCKETS);
+    private final ActivityBuckets daily = new ActivityBuckets(DAY_MILLIS, DAILY_BUCKETS);
+    private long latest = -1L;
+
+    public synchronized void add(long timestamp) {
+        add(timestamp, 1);
+    }
+
+    public synchronized void add(long timestamp, int amount) {
+        hourly.add(timestamp, amount);
+        daily.add(timestamp, amount);
+        latest = Math.max(latest, timestamp);
+    }
+
+    /**
+     * Move the buckets forward to the given time, dropping activity that is older than the kept range
+     *
+     * @return The amount of bucket entries that were dropped
+     */
+    public synchronized int purge(long currentTime) {
+        return hourly.advance(currentTime) + daily.advance(currentTime);
+    }
+
+    /**
+     * @return The next time {@link #purge(long)} would drop activity, or {@link Long#MAX_VALUE} if there is none
+     */
+    public synchronized long getExpiryTime() {
+        return Math.min(hourly.getExpiryTime(), daily.getExpiryTime());
+    }
+
+    /**
+     * @return The amount of activity in the buckets that start at or after the given time
+     */
+    public synchronized int countSince(long since) {
+        if (System.currentTimeMillis() - since < HOURLY_BUCKETS * HOUR_MILLIS) {
+            return hourly.sumSince(since);
+        }
+
+        return daily.sumSince(since);
+    }
+
+    /**
+     * @return The exact time of the latest activity, or -1 if there has never been any
+     */
+    public synchronized long getLatest() {
+        return latest;
+    }
+
+    public synchronized boolean isEmpty() {
+        return latest < 0;
+    }
+
+    /**
+     * The hourly buckets. Reading or changing them has to be synchronized on this history.
+     */
+    public ActivityBuckets getHourly() {
+        return hourly;
+    }
+
+    /**
+     * The daily buckets. Reading or changing them has to be synchronized on this history.
+     */
+    public ActivityBuckets getDaily() {
+        return daily;
+    }
+
+    public synchronized void setLatest(long latest) {
+        this.latest = latest;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ActivityHistory{latest=" + latest + ", last24Hours=" + hourly.sumSince(System.currentTimeMillis() - DAY_MILLIS) + "}";
+    }
+}
@@ -4,16 +4,111 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.Setter;
 
-import java.util.Map;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 
 @AllArgsConstructor
 @Getter
 @Setter
 public class ChannelActivityEntry {
 
+    /**
+     * The amount of days message counts are kept for per day. Older messages are only counted per month.
+     */
+    public static final int DAILY_RETENTION_DAYS = 31;
+
+    // Almost every message is sent on the current day, so keep its keys instead of converting each timestamp
+    private static volatile CachedDay currentDay = CachedDay.of(System.currentTimeMillis());
+
     private String channelId;
     private String lastKnownDisplayName;
     private int messageCount;
     private long lastMessageTimestamp;
-    private Map<String, Integer> monthlyMessageCount;
+    private NavigableMap<YearMonth, Integer> monthlyMessageCount;
+    private NavigableMap<LocalDate, Integer> dailyMessageCount;
+    /**
+     * The first day included in {@link #dailyMessageCount}, as entries created before messages were counted per day
+     * only have monthly counts for the days before it
+     */
+    private LocalDate dailyCountsSince;
+
+    public ChannelActivityEntry(String channelId, String lastKnownDisplayName) {
+        this(channelId, lastKnownDisplayName, 0, -1L, new TreeMap<>(), new TreeMap<>(), LocalDate.now());
+    }
+
+    public void addMessages(int amount, long timestamp) {
+        CachedDay day = currentDay;
+
+        if (!day.contains(timestamp)) {
+            day = CachedDay.of(timestamp);
+
+            // Only move the cached day forward, older timestamps are converted every time
+            if (timestamp > currentDay.start()) {
+                currentDay = day;
+            }
+        }
+
+        messageCount += amount;
+        lastMessageTimestamp = Math.max(lastMessageTimestamp, timestamp);
+        monthlyMessageCount.merge(day.month(), amount, Integer::sum);
+        dailyMessageCount.merge(day.date(), amount, Integer::sum);
+
+        if (dailyMessageCount.size() > DAILY_RETENTION_DAYS) {
+            dailyMessageCount.headMap(day.date().minusDays(DAILY_RETENTION_DAYS - 1), false).clear();
+        }
+    }
+
+    /**
+     * Count the messages sent on or after the given day. Windows within the last {@link #DAILY_RETENTION_DAYS} days
+     * are counted per day, longer windows per month, including the whole month the window starts in.
+     *
+     * @param startDate The first day to count
+     *
+     * @return The amount of messages sent in the window
+     */
+    public int getMessageCountSince(LocalDate startDate) {
+        boolean countedPerDay = !startDate.isBefore(LocalDate.now().minusDays(DAILY_RETENTION_DAYS - 1))
+            && dailyCountsSince != null
+            && !startDate.isBefore(dailyCountsSince);
+
+        if (countedPerDay) {
+            return sum(dailyMessageCount.tailMap(startDate, true));
+        }
+
+        return sum(monthlyMessageCount.tailMap(YearMonth.from(startDate), true));
+    }
+
+    /**
+     * @return A copy of this entry with its total message count replaced
+     */
+    public ChannelActivityEntry withMessageCount(int messageCount) {
+        return new ChannelActivityEntry(channelId, lastKnownDisplayName, messageCount, lastMessageTimestamp, monthlyMessageCount, dailyMessageCount, dailyCountsSince);
+    }
+
+    private record CachedDay(long start, long end, LocalDate date, YearMonth month) {
+
+        static CachedDay of(long timestamp) {
+            ZoneId zone = ZoneId.systemDefault();
+            LocalDate date = Instant.ofEpochMilli(timestamp).atZone(zone).toLocalDate();
+            long start = date.atStartOfDay(zone).toInstant().toEpochMilli();
+            long end = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            return new CachedDay(start, end, date, YearMonth.from(date));
+        }
+
+        boolean contains(long timestamp) {
+            return timestamp >= start && timestamp < end;
+        }
+    }
+
+    private static int sum(NavigableMap<?, Integer> counts) {
+        int total = 0;
+        for (int count : counts.values()) {
+            total += count;
+        }
+        return total;
+    }
 }
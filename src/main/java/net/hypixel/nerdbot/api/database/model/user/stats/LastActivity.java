@@ -1,23 +1,22 @@
 package net.hypixel.nerdbot.api.database.model.user.stats;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.log4j.Log4j2;
 import net.dv8tion.jda.api.entities.channel.middleman.GuildChannel;
 import net.hypixel.nerdbot.util.discord.DiscordTimestamp;
-import org.apache.commons.lang.time.DateFormatUtils;
 
 import java.time.Duration;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.ToLongFunction;
-import java.util.stream.Stream;
 
 @Getter
 @Setter
@@ -30,113 +29,230 @@ public class LastActivity {
     private long lastItemGenUsage = -1L;
     private long lastModMailUsage = -1L;
 
+    // The ID of the activity journal and sequence number of the last record from it applied to this user
+    private String activityJournalId;
+    private long activityJournalSequence = -1L;
+
+    // Voice Activity
+    private long totalVoiceTimeSeconds = 0L;
+    private int voiceSessionCount = 0;
+    private ActivityHistory voiceTimeHistory = new ActivityHistory();
+
     // Suggestion Activity History
-    private List<Long> suggestionCreationHistory = new ArrayList<>();
-    private List<Long> suggestionVoteHistory = new ArrayList<>();
-    private List<Long> suggestionCommentHistory = new ArrayList<>();
+    private ActivityHistory suggestionCreationHistory = new ActivityHistory();
+    private ActivityHistory suggestionVoteHistory = new ActivityHistory();
+    private ActivityHistory suggestionCommentHistory = new ActivityHistory();
 
     // Alpha Activity
     private long lastAlphaActivity = -1L;
     private long alphaVoiceJoinDate = -1L;
 
     // Alpha Suggestion Activity History
-    private List<Long> alphaSuggestionCreationHistory = new ArrayList<>();
-    private List<Long> alphaSuggestionVoteHistory = new ArrayList<>();
-    private List<Long> alphaSuggestionCommentHistory = new ArrayList<>();
+    private ActivityHistory alphaSuggestionCreationHistory = new ActivityHistory();
+    private ActivityHistory alphaSuggestionVoteHistory = new ActivityHistory();
+    private ActivityHistory alphaSuggestionCommentHistory = new ActivityHistory();
 
     // Project Activity
     private long lastProjectActivity = -1L;
     private long projectVoiceJoinDate = -1L;
 
     // Project Suggestion Activity History
-    private List<Long> projectSuggestionCreationHistory = new ArrayList<>();
-    private List<Long> projectSuggestionVoteHistory = new ArrayList<>();
-    private List<Long> projectSuggestionCommentHistory = new ArrayList<>();
+    private ActivityHistory projectSuggestionCreationHistory = new ActivityHistory();
+    private ActivityHistory projectSuggestionVoteHistory = new ActivityHistory();
+    private ActivityHistory projectSuggestionCommentHistory = new ActivityHistory();
 
     private List<ChannelActivityEntry> channelActivityHistory = new ArrayList<>();
     private Map<String, Integer> channelActivity = new HashMap<>();
 
+    // Not stored, built from the channel activity history the first time a channel is looked up
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient Map<String, ChannelActivityEntry> channelActivityIndex;
+
     public void addChannelHistory(GuildChannel guildChannel, long lastMessageTimestamp) {
         addChannelHistory(guildChannel, 1, lastMessageTimestamp);
     }
 
+    /**
+     * Count messages sent in a channel. Display names are not checked here, see {@link #updateChannelNames(Function)}.
+     */
     public void addChannelHistory(GuildChannel guildChannel, int amount, long timestamp) {
-        channelActivityHistory.stream()
-            .filter(entry -> entry.getChannelId().equals(guildChannel.getId()) || entry.getLastKnownDisplayName().equalsIgnoreCase(guildChannel.getName()))
-            .findFirst()
-            .ifPresentOrElse(entry -> {
-                entry.setMessageCount(entry.getMessageCount() + amount);
-                entry.setLastMessageTimestamp(timestamp);
-
-                String monthYear = DateFormatUtils.format(timestamp, "MM-yyyy");
-                entry.getMonthlyMessageCount().merge(monthYear, amount, Integer::sum);
-
-                if (entry.getLastKnownDisplayName() == null || !entry.getLastKnownDisplayName().equalsIgnoreCase(guildChannel.getName())) {
-                    log.debug("Updating channel activity entry for channel " + entry.getLastKnownDisplayName() + " (ID: " + guildChannel.getId() + ") with new display name: " + guildChannel.getName());
-                    entry.setLastKnownDisplayName(guildChannel.getName());
-                }
-
-                log.debug("Updated channel activity entry for channel " + guildChannel.getName() + " (ID: " + guildChannel.getId() + "): " + entry.getMessageCount() + " messages");
-            }, () -> {
-                log.debug("Adding new channel activity entry for channel " + guildChannel.getName() + " (ID: " + guildChannel.getId() + ")");
-                channelActivityHistory.add(new ChannelActivityEntry(guildChannel.getId(), guildChannel.getName(), amount, timestamp, new HashMap<>(Map.of(DateFormatUtils.format(timestamp, "MM-yyyy"), amount))));
-            });
-    }
-
-    public boolean purgeOldHistory() {
-        long thirtyDays = Duration.of(30, ChronoUnit.DAYS).toMillis();
+        addChannelHistory(guildChannel.getId(), guildChannel.getName(), amount, timestamp);
+    }
+
+    /**
+     * Count messages sent in a channel that is only known by its ID and name, such as one captured by an event
+     */
+    public void addChannelHistory(String channelId, String channelName, int amount, long timestamp) {
+        Map<String, ChannelActivityEntry> index = getChannelActivityIndex();
+        ChannelActivityEntry entry = index.get(channelId);
+
+        if (entry == null) {
+            entry = findOrCreateChannelEntry(channelId, channelName);
+            index.put(channelId, entry);
+        }
+
+        entry.addMessages(amount, timestamp);
+    }
+
+    /**
+     * Update the last known display name of every channel that has been renamed
+     *
+     * @param nameLookup Returns the current name of a channel from its ID, or null if the channel no longer exists
+     *
+     * @return True if any names were updated
+     */
+    public boolean updateChannelNames(Function<String, String> nameLookup) {
+        boolean updated = false;
+
+        for (ChannelActivityEntry entry : channelActivityHistory) {
+            String name = nameLookup.apply(entry.getChannelId());
+
+            if (name != null && !name.equals(entry.getLastKnownDisplayName())) {
+                log.debug("Updating channel activity entry for channel " + entry.getLastKnownDisplayName() + " (ID: " + entry.getChannelId() + ") with new display name: " + name);
+                entry.setLastKnownDisplayName(name);
+                updated = true;
+            }
+        }
+
+        return updated;
+    }
+
+    public void setChannelActivityHistory(List<ChannelActivityEntry> channelActivityHistory) {
+        this.channelActivityHistory = channelActivityHistory;
+        this.channelActivityIndex = null;
+    }
+
+    private Map<String, ChannelActivityEntry> getChannelActivityIndex() {
+        Map<String, ChannelActivityEntry> index = channelActivityIndex;
+
+        if (index == null) {
+            index = new ConcurrentHashMap<>();
+            for (ChannelActivityEntry entry : channelActivityHistory) {
+                index.putIfAbsent(entry.getChannelId(), entry);
+            }
+            channelActivityIndex = index;
+        }
+
+        return index;
+    }
+
+    /**
+     * Only called the first time a channel is seen since the user was loaded
+     */
+    private ChannelActivityEntry findOrCreateChannelEntry(String channelId, String channelName) {
+        // Entries of channels that were recreated under the same name keep counting the new channel
+        for (ChannelActivityEntry entry : channelActivityHistory) {
+            if (entry.getLastKnownDisplayName() != null && entry.getLastKnownDisplayName().equalsIgnoreCase(channelName)) {
+                return entry;
+            }
+        }
+
+        log.debug("Adding new channel activity entry for channel " + channelName + " (ID: " + channelId + ")");
+        ChannelActivityEntry entry = new ChannelActivityEntry(channelId, channelName);
+        channelActivityHistory.add(entry);
+        return entry;
+    }
+
+    /**
+     * Count a finished voice session towards the time spent in voice channels
+     *
+     * @param endTime  The time the session ended
+     * @param duration The length of the session in milliseconds
+     */
+    public void addVoiceSession(long endTime, long duration) {
+        long seconds = TimeUnit.MILLISECONDS.toSeconds(duration);
+
+        totalVoiceTimeSeconds += seconds;
+        voiceSessionCount++;
+        voiceTimeHistory.add(endTime, (int) Math.min(seconds, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Drop activity counts that are older than the buckets kept by each {@link ActivityHistory}
+     *
+     * @return The amount of bucket entries that were dropped
+     */
+    public int purgeOldHistory() {
         long currentTime = System.currentTimeMillis();
+        int purged = 0;
 
-        return this.suggestionCreationHistory.removeIf(time -> time <= (currentTime - thirtyDays)) ||
-            this.suggestionVoteHistory.removeIf(time -> time <= (currentTime - thirtyDays)) ||
-            this.suggestionCommentHistory.removeIf(time -> time <= (currentTime - thirtyDays)) ||
-            this.alphaSuggestionCreationHistory.removeIf(time -> time <= (currentTime - thirtyDays)) ||
-            this.alphaSuggestionVoteHistory.removeIf(time -> time <= (currentTime - thirtyDays)) ||
-            this.alphaSuggestionCommentHistory.removeIf(time -> time <= (currentTime - thirtyDays)) ||
-            this.projectSuggestionCreationHistory.removeIf(time -> time <= (currentTime - thirtyDays)) ||
-            this.projectSuggestionVoteHistory.removeIf(time -> time <= (currentTime - thirtyDays)) ||
-            this.projectSuggestionCommentHistory.removeIf(time -> time <= (currentTime - thirtyDays));
+        for (ActivityHistory history : getActivityHistories()) {
+            purged += history.purge(currentTime);
+        }
+
+        return purged;
+    }
+
+    /**
+     * @return The next time {@link #purgeOldHistory()} would drop activity, or {@link Long#MAX_VALUE} if there is none
+     */
+    public long getNextActivityExpiry() {
+        long expiry = Long.MAX_VALUE;
+
+        for (ActivityHistory history : getActivityHistories()) {
+            expiry = Math.min(expiry, history.getExpiryTime());
+        }
+
+        return expiry;
+    }
+
+    private List<ActivityHistory> getActivityHistories() {
+        return List.of(
+            suggestionCreationHistory, suggestionVoteHistory, suggestionCommentHistory,
+            alphaSuggestionCreationHistory, alphaSuggestionVoteHistory, alphaSuggestionCommentHistory,
+            projectSuggestionCreationHistory, projectSuggestionVoteHistory, projectSuggestionCommentHistory,
+            voiceTimeHistory
+        );
     }
 
     public int getTotalMessageCount() {
         return getChannelActivityHistory().stream().mapToInt(ChannelActivityEntry::getMessageCount).sum();
     }
 
+    /**
+     * @return The amount of messages sent in the last given amount of days, including today
+     */
     public int getTotalMessageCount(int days) {
-        return getChannelActivityHistory(days).stream().mapToInt(ChannelActivityEntry::getMessageCount).sum();
+        LocalDate startDate = LocalDate.now().minusDays(days - 1);
+        int total = 0;
+
+        for (ChannelActivityEntry entry : channelActivityHistory) {
+            total += entry.getMessageCountSince(startDate);
+        }
+
+        return total;
     }
 
+    /**
+     * Get the channels messages were sent in during the last given amount of days, including today
+     *
+     * @return One entry per channel with its message count set to the amount of messages sent in that window
+     *
+     * @see ChannelActivityEntry#getMessageCountSince(LocalDate)
+     */
     public List<ChannelActivityEntry> getChannelActivityHistory(int days) {
-        LocalDate endDate = LocalDate.now();
-        LocalDate startDate = endDate.minusDays(days - 1);
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MM-yyyy");
-
+        LocalDate startDate = LocalDate.now().minusDays(days - 1);
         List<ChannelActivityEntry> entries = new ArrayList<>();
+
         for (ChannelActivityEntry entry : channelActivityHistory) {
-            Map<String, Integer> monthlyMessageCountMap = entry.getMonthlyMessageCount();
-            Stream.iterate(startDate, date -> date.isBefore(endDate.plusDays(1)), date -> date.plusDays(1))
-                .map(date -> date.format(formatter))
-                .filter(monthlyMessageCountMap::containsKey)
-                .map(key -> new ChannelActivityEntry(entry.getChannelId(), entry.getLastKnownDisplayName(), monthlyMessageCountMap.get(key), entry.getLastMessageTimestamp(), monthlyMessageCountMap))
-                .forEach(entries::add);
+            int messageCount = entry.getMessageCountSince(startDate);
+
+            if (messageCount > 0) {
+                entries.add(entry.withMessageCount(messageCount));
+            }
         }
 
         return entries;
     }
 
-    public String toTotalPeriod(Function<LastActivity, List<Long>> function, Duration duration) {
-        List<Long> history = function.apply(this);
-
-        long total = history.stream()
-            .filter(time -> time >= System.currentTimeMillis() - duration.toMillis())
-            .count();
-
-        return String.valueOf(total);
+    public String toTotalPeriod(Function<LastActivity, ActivityHistory> function, Duration duration) {
+        ActivityHistory history = function.apply(this);
+        return String.valueOf(history.countSince(System.currentTimeMillis() - duration.toMillis()));
     }
 
-    public String toRelativeTimestamp(Function<LastActivity, List<Long>> function) {
-        List<Long> history = function.apply(this);
-        long time = history.isEmpty() ? -1L : history.get(0);
+    public String toRelativeTimestamp(Function<LastActivity, ActivityHistory> function) {
+        long time = function.apply(this).getLatest();
 
         if (time <= 0) {
             return "Never";
@@ -0,0 +1,274 @@
+package net.hypixel.nerdbot.api.repository;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import lombok.extern.log4j.Log4j2;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows a MongoDB change stream for a {@link Repository}'s collection and applies inserts, updates and deletes made
+ * by other processes to the repository's cache.
+ * <br><br>
+ * The resume token of the last applied change is saved to a local file, so after a restart the subscriber continues
+ * from where it stopped instead of missing the changes made in between. If the token is too old to resume from, the
+ * subscriber starts again from the current time.
+ *
+ * @param <T> The type of the entities in the repository
+ */
+@Log4j2
+public class ChangeStreamSubscriber<T> implements Runnable {
+
+    /**
+     * Returned by servers that are not part of a replica set, which do not support change streams
+     */
+    private static final int CHANGE_STREAMS_UNSUPPORTED = 40573;
+    /**
+     * Returned when the resume token is no longer in the oplog
+     */
+    private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+    private static final long TOKEN_SAVE_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Repository<T> repository;
+    private final Path resumeTokenFile;
+    private final String name;
+    private final Object tokenLock = new Object();
+    private volatile boolean running;
+    private volatile MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor;
+    private Thread thread;
+    private volatile BsonDocument resumeToken;
+    private BsonDocument savedResumeToken;
+    private long lastTokenSave;
+
+    ChangeStreamSubscriber(Repository<T> repository, Path resumeTokenFile) {
+        this.repository = repository;
+        this.resumeTokenFile = resumeTokenFile;
+        this.name = repository.getClass().getSimpleName();
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+
+        resumeToken = readResumeToken();
+        savedResumeToken = resumeToken;
+        running = true;
+
+        thread = new Thread(this, name + "-change-stream");
+        thread.setDaemon(true);
+        thread.start();
+
+        log.info("[" + name + "] Started following changes" + (resumeToken != null ? " from saved resume token" : ""));
+    }
+
+    public void stop() {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+
+        MongoChangeStreamCursor<ChangeStreamDocument<Document>> currentCursor = cursor;
+        if (currentCursor != null) {
+            try {
+                currentCursor.close();
+            } catch (MongoException | IllegalStateException ignored) {
+                // The cursor may already be closed by the subscriber thread
+            }
+        }
+
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        saveResumeToken(true);
+        log.info("[" + name + "] Stopped following changes");
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void run() {
+        long retryDelay = 1_000L;
+
+        while (running) {
+            try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> changeStreamCursor = openCursor()) {
+                cursor = changeStreamCursor;
+                retryDelay = 1_000L;
+
+                while (running) {
+                    ChangeStreamDocument<Document> change = changeStreamCursor.tryNext();
+
+                    if (change != null && !apply(change)) {
+                        break; // The stream was invalidated, so open a new one from the current time
+                    }
+
+                    if (changeStreamCursor.getResumeToken() != null) {
+                        resumeToken = changeStreamCursor.getResumeToken();
+                    }
+
+                    saveResumeToken(false);
+                }
+            } catch (MongoCommandException exception) {
+                if (exception.getErrorCode() == CHANGE_STREAMS_UNSUPPORTED) {
+                    log.error("[" + name + "] The database does not support change streams, changes made by other processes will not be applied");
+                    running = false;
+                    return;
+                }
+
+                if (exception.getErrorCode() == CHANGE_STREAM_HISTORY_LOST) {
+                    log.warn("[" + name + "] Saved resume token is too old, following changes from now instead");
+                    resumeToken = null;
+                    deleteResumeToken();
+                    continue;
+                }
+
+                retryDelay = waitBeforeRetry(exception, retryDelay);
+            } catch (MongoException | IllegalStateException exception) {
+                if (!running) {
+                    return; // Cursor closed by stop()
+                }
+
+                retryDelay = waitBeforeRetry(exception, retryDelay);
+            } finally {
+                cursor = null;
+            }
+        }
+    }
+
+    private MongoChangeStreamCursor<ChangeStreamDocument<Document>> openCursor() {
+        ChangeStreamIterable<Document> changeStream = repository.getMongoCollection().watch()
+            .fullDocument(FullDocument.UPDATE_LOOKUP)
+            .maxAwaitTime(1, TimeUnit.SECONDS);
+
+        if (resumeToken != null) {
+            changeStream.resumeAfter(resumeToken);
+        }
+
+        return changeStream.cursor();
+    }
+
+    /**
+     * @return False if the change stream was invalidated and has to be reopened
+     */
+    private boolean apply(ChangeStreamDocument<Document> change) {
+        OperationType operationType = change.getOperationType();
+        BsonDocument documentKey = change.getDocumentKey();
+
+        try {
+            switch (operationType) {
+                case INSERT, UPDATE, REPLACE -> {
+                    // The document may have been deleted before the update could be looked up
+                    if (change.getFullDocument() != null) {
+                        repository.applyRemoteChange(documentKey != null ? documentKey.get("_id") : null, change.getFullDocument(), operationType == OperationType.INSERT);
+                    }
+                }
+                case DELETE -> {
+                    if (documentKey != null && documentKey.containsKey("_id")) {
+                        repository.applyRemoteDelete(documentKey.get("_id"));
+                    }
+                }
+                case DROP, RENAME, DROP_DATABASE, INVALIDATE -> {
+                    log.warn("[" + name + "] Change stream was invalidated by a " + operationType.getValue() + " event, following changes from now");
+                    resumeToken = null;
+                    deleteResumeToken();
+                    return false;
+                }
+                default -> log.debug("[" + name + "] Ignoring change stream event " + operationType.getValue());
+            }
+        } catch (Exception exception) {
+            log.error("[" + name + "] Failed to apply " + operationType.getValue() + " change", exception);
+        }
+
+        return true;
+    }
+
+    private long waitBeforeRetry(Exception exception, long retryDelay) {
+        log.warn("[" + name + "] Change stream failed, retrying in " + retryDelay + "ms: " + exception.getMessage());
+
+        try {
+            Thread.sleep(retryDelay);
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+
+        return Math.min(retryDelay * 2, MAX_RETRY_DELAY_MILLIS);
+    }
+
+    @Nullable
+    private BsonDocument readResumeToken() {
+        if (!Files.exists(resumeTokenFile)) {
+            return null;
+        }
+
+        try {
+            return BsonDocument.parse(Files.readString(resumeTokenFile, StandardCharsets.UTF_8));
+        } catch (IOException | RuntimeException exception) {
+            log.warn("[" + name + "] Failed to read resume token from " + resumeTokenFile + ", following changes from now", exception);
+            return null;
+        }
+    }
+
+    private void saveResumeToken(boolean force) {
+        synchronized (tokenLock) {
+            saveResumeTokenLocked(force);
+        }
+    }
+
+    private void saveResumeTokenLocked(boolean force) {
+        BsonDocument token = resumeToken;
+
+        if (token == null || token.equals(savedResumeToken)) {
+            return;
+        }
+
+        if (!force && System.currentTimeMillis() - lastTokenSave < TOKEN_SAVE_INTERVAL_MILLIS) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(resumeTokenFile.toAbsolutePath().getParent());
+
+            // Write to a temporary file first so a crash mid-write never leaves a corrupt token behind
+            Path temporaryFile = resumeTokenFile.resolveSibling(resumeTokenFile.getFileName() + ".tmp");
+            Files.writeString(temporaryFile, token.toJson(), StandardCharsets.UTF_8);
+            Files.move(temporaryFile, resumeTokenFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            savedResumeToken = token;
+            lastTokenSave = System.currentTimeMillis();
+        } catch (IOException exception) {
+            log.error("[" + name + "] Failed to save resume token to " + resumeTokenFile, exception);
+        }
+    }
+
+    private void deleteResumeToken() {
+        synchronized (tokenLock) {
+            try {
+                Files.deleteIfExists(resumeTokenFile);
+                savedResumeToken = null;
+            } catch (IOException exception) {
+                log.error("[" + name + "] Failed to delete resume token " + resumeTokenFile, exception);
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package net.hypixel.nerdbot.api.repository;
+
+import org.bson.Document;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Builds the smallest update document that turns a previously persisted {@link Document} into a new one.
+ * <br><br>
+ * Changed fields are written with {@code $set}, removed fields with {@code $unset} and lists that only had
+ * elements added to the front or back (optionally dropping elements from the other end, such as the activity
+ * history lists) with {@code $push}. Nested documents are compared field by field using dotted paths.
+ */
+public final class DocumentDiff {
+
+    private static final String ID_FIELD = "_id";
+
+    private DocumentDiff() {
+    }
+
+    /**
+     * Compute the update operations needed to go from the previous document to the current one
+     *
+     * @param previous The last document that was written to the database
+     * @param current  The document that should be in the database
+     *
+     * @return An update document, which is empty if nothing changed
+     */
+    public static Document diff(Document previous, Document current) {
+        Document set = new Document();
+        Document unset = new Document();
+        Document push = new Document();
+
+        diffDocuments("", previous, current, set, unset, push);
+
+        Document update = new Document();
+        if (!set.isEmpty()) {
+            update.put("$set", set);
+        }
+        if (!unset.isEmpty()) {
+            update.put("$unset", unset);
+        }
+        if (!push.isEmpty()) {
+            update.put("$push", push);
+        }
+
+        return update;
+    }
+
+    private static void diffDocuments(String prefix, Map<String, Object> previous, Map<String, Object> current, Document set, Document unset, Document push) {
+        for (Map.Entry<String, Object> entry : current.entrySet()) {
+            String key = entry.getKey();
+            if (prefix.isEmpty() && key.equals(ID_FIELD)) {
+                continue;
+            }
+
+            String path = prefix + key;
+            Object newValue = entry.getValue();
+
+            if (!previous.containsKey(key)) {
+                set.put(path, newValue);
+                continue;
+            }
+
+            diffValues(path, previous.get(key), newValue, set, unset, push);
+        }
+
+        for (String key : previous.keySet()) {
+            if (!current.containsKey(key) && !(prefix.isEmpty() && key.equals(ID_FIELD))) {
+                unset.put(prefix + key, "");
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void diffValues(String path, Object oldValue, Object newValue, Document set, Document unset, Document push) {
+        if (Objects.equals(oldValue, newValue)) {
+            return;
+        }
+
+        if (oldValue instanceof Map<?, ?> oldMap && newValue instanceof Map<?, ?> newMap) {
+            diffDocuments(path + ".", (Map<String, Object>) oldMap, (Map<String, Object>) newMap, set, unset, push);
+            return;
+        }
+
+        if (oldValue instanceof List<?> oldList && newValue instanceof List<?> newList) {
+            diffLists(path, oldList, newList, set, unset, push);
+            return;
+        }
+
+        set.put(path, newValue);
+    }
+
+    private static void diffLists(String path, List<?> oldList, List<?> newList, Document set, Document unset, Document push) {
+        int oldSize = oldList.size();
+        int newSize = newList.size();
+
+        // Same length, so compare element by element using positional paths
+        if (oldSize == newSize) {
+            for (int i = 0; i < newSize; i++) {
+                diffValues(path + "." + i, oldList.get(i), newList.get(i), set, unset, push);
+            }
+            return;
+        }
+
+        // Elements prepended, with the oldest elements at the end possibly removed
+        int prepended = findPrepended(oldList, newList);
+        if (prepended >= 0) {
+            Document operation = new Document("$each", newList.subList(0, prepended)).append("$position", 0);
+            if (newSize - prepended < oldSize) {
+                operation.append("$slice", newSize);
+            }
+            push.put(path, operation);
+            return;
+        }
+
+        // Elements appended, with the oldest elements at the start possibly removed
+        int appended = findAppended(oldList, newList);
+        if (appended >= 0) {
+            Document operation = new Document("$each", newList.subList(newSize - appended, newSize));
+            if (newSize - appended < oldSize) {
+                operation.append("$slice", -newSize);
+            }
+            push.put(path, operation);
+            return;
+        }
+
+        set.put(path, newList);
+    }
+
+    /**
+     * @return The amount of elements added to the front of the list, or -1 if the new list
+     * is not some new elements followed by the start of the old list
+     */
+    private static int findPrepended(List<?> oldList, List<?> newList) {
+        int newSize = newList.size();
+        int kept = Math.min(oldList.size(), newSize);
+
+        for (; kept > 0; kept--) {
+            int offset = newSize - kept;
+            if (Objects.equals(newList.get(offset), oldList.get(0)) && regionMatches(oldList, 0, newList, offset, kept)) {
+                return offset;
+            }
+        }
+
+        return oldList.isEmpty() ? newSize : -1;
+    }
+
+    /**
+     * @return The amount of elements added to the end of the list, or -1 if the new list
+     * is not the end of the old list followed by some new elements
+     */
+    private static int findAppended(List<?> oldList, List<?> newList) {
+        int oldSize = oldList.size();
+        int kept = Math.min(oldSize, newList.size());
+
+        for (; kept > 0; kept--) {
+            if (Objects.equals(newList.get(kept - 1), oldList.get(oldSize - 1)) && regionMatches(oldList, oldSize - kept, newList, 0, kept)) {
+                return newList.size() - kept;
+            }
+        }
+
+        return -1;
+    }
+
+    private static boolean regionMatches(List<?> first, int firstOffset, List<?> second, int secondOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (!Objects.equals(first.get(firstOffset + i), second.get(secondOffset + i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
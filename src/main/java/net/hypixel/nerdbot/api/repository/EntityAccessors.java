@@ -0,0 +1,200 @@
+package net.hypixel.nerdbot.api.repository;
+
+import lombok.extern.log4j.Log4j2;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Generates {@link IdExtractor}s, {@link EntityFactory}s and {@link EntityCopier}s for entity classes once, so that
+ * reading an identifier, creating an entity or copying its state does not go through reflection every time.
+ * <br><br>
+ * Public getters and constructors are bound with {@link LambdaMetafactory}, which produces a class that calls them
+ * directly. Anything else falls back to a {@link MethodHandle}.
+ */
+@Log4j2
+public final class EntityAccessors {
+
+    private static final MethodType FUNCTION_FACTORY_TYPE = MethodType.methodType(Function.class);
+    private static final MethodType FUNCTION_APPLY_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private EntityAccessors() {
+    }
+
+    /**
+     * Create an {@link IdExtractor} that reads the given field, preferring its getter if it has one
+     *
+     * @param entityClass         The class of the entity
+     * @param identifierFieldName The name of the identifier field
+     *
+     * @return The generated extractor
+     */
+    public static <T> IdExtractor<T> createIdExtractor(Class<T> entityClass, String identifierFieldName) {
+        Field field = findField(entityClass, identifierFieldName);
+        Method getter = findGetter(entityClass, field);
+
+        try {
+            Function<T, Object> function;
+
+            if (getter != null) {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                MethodHandle handle = lookup.unreflect(getter);
+                function = bindFunction(lookup, handle, MethodType.methodType(getter.getReturnType(), entityClass));
+                log.debug("Generated identifier extractor for " + entityClass.getSimpleName() + " using " + getter.getName() + "()");
+            } else {
+                MethodHandle handle = MethodHandles.privateLookupIn(entityClass, MethodHandles.lookup())
+                    .unreflectGetter(field)
+                    .asType(FUNCTION_APPLY_TYPE);
+                function = entity -> invoke(handle, entity);
+                log.debug("Generated identifier extractor for " + entityClass.getSimpleName() + " using field " + field.getName());
+            }
+
+            return entity -> {
+                Object value = function.apply(entity);
+                return value != null ? value.toString() : null;
+            };
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Failed to create identifier extractor for " + entityClass.getName() + "#" + identifierFieldName, throwable);
+        }
+    }
+
+    /**
+     * Create an {@link EntityFactory} that calls the entity's constructor taking a single {@link String} identifier
+     *
+     * @param entityClass The class of the entity
+     *
+     * @return The generated factory, or null if the entity does not have such a constructor
+     */
+    @Nullable
+    public static <T> EntityFactory<T> createEntityFactory(Class<T> entityClass) {
+        try {
+            entityClass.getConstructor(String.class);
+
+            if (!Modifier.isPublic(entityClass.getModifiers())) {
+                log.debug(entityClass.getSimpleName() + " is not public, so it cannot be created by its repository");
+                return null;
+            }
+
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle constructor = lookup.findConstructor(entityClass, MethodType.methodType(void.class, String.class));
+            Function<String, T> function = bindFunction(lookup, constructor, MethodType.methodType(entityClass, String.class));
+
+            log.debug("Generated entity factory for " + entityClass.getSimpleName());
+            return function::apply;
+        } catch (NoSuchMethodException exception) {
+            log.debug(entityClass.getSimpleName() + " does not have a constructor taking an identifier, so it cannot be created by its repository");
+            return null;
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Failed to create entity factory for " + entityClass.getName(), throwable);
+        }
+    }
+
+    /**
+     * Create an {@link EntityCopier} that copies every field that is not static or transient, the same fields the
+     * entity's codec stores
+     *
+     * @param entityClass The class of the entity
+     *
+     * @return The generated copier
+     */
+    public static <T> EntityCopier<T> createEntityCopier(Class<T> entityClass) {
+        List<MethodHandle> getters = new ArrayList<>();
+        List<MethodHandle> setters = new ArrayList<>();
+
+        try {
+            for (Class<?> clazz = entityClass; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+                MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(clazz, MethodHandles.lookup());
+
+                for (Field field : clazz.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())) {
+                        continue;
+                    }
+
+                    // Final fields are set by the codec as well, which needs the field to be accessible
+                    field.setAccessible(true);
+                    getters.add(lookup.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class)));
+                    setters.add(lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, Object.class)));
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException exception) {
+            throw new IllegalStateException("Failed to create entity copier for " + entityClass.getName(), exception);
+        }
+
+        MethodHandle[] getterArray = getters.toArray(MethodHandle[]::new);
+        MethodHandle[] setterArray = setters.toArray(MethodHandle[]::new);
+        log.debug("Generated entity copier for " + entityClass.getSimpleName() + " copying " + getterArray.length + " fields");
+
+        return (source, target) -> {
+            for (int i = 0; i < getterArray.length; i++) {
+                Object value = invoke(getterArray[i], source);
+
+                try {
+                    setterArray[i].invokeExact(target, value);
+                } catch (RuntimeException | Error exception) {
+                    throw exception;
+                } catch (Throwable throwable) {
+                    throw new IllegalStateException(throwable);
+                }
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <A, R> Function<A, R> bindFunction(MethodHandles.Lookup lookup, MethodHandle implementation, MethodType instantiatedType) throws Throwable {
+        CallSite callSite = LambdaMetafactory.metafactory(
+            lookup,
+            "apply",
+            FUNCTION_FACTORY_TYPE,
+            FUNCTION_APPLY_TYPE,
+            implementation,
+            instantiatedType
+        );
+
+        return (Function<A, R>) callSite.getTarget().invoke();
+    }
+
+    private static Object invoke(MethodHandle handle, Object entity) {
+        try {
+            return handle.invokeExact(entity);
+        } catch (RuntimeException | Error exception) {
+            throw exception;
+        } catch (Throwable throwable) {
+            throw new IllegalStateException(throwable);
+        }
+    }
+
+    private static Field findField(Class<?> entityClass, String fieldName) {
+        for (Class<?> clazz = entityClass; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            try {
+                return clazz.getDeclaredField(fieldName);
+            } catch (NoSuchFieldException ignored) {
+            }
+        }
+
+        throw new IllegalArgumentException("Could not find identifier field " + fieldName + " in " + entityClass.getName());
+    }
+
+    @Nullable
+    private static Method findGetter(Class<?> entityClass, Field field) {
+        String name = field.getName();
+        String getterName = (field.getType() == boolean.class ? "is" : "get") + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+
+        try {
+            Method method = entityClass.getMethod(getterName);
+            boolean accessible = Modifier.isPublic(method.getModifiers()) && Modifier.isPublic(method.getDeclaringClass().getModifiers());
+            return accessible && !method.getReturnType().isPrimitive() ? method : null;
+        } catch (NoSuchMethodException exception) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package net.hypixel.nerdbot.api.repository;
+
+/**
+ * Copies the stored state of one entity of a {@link Repository} onto another
+ *
+ * @param <T> The type of the entity
+ */
+@FunctionalInterface
+public interface EntityCopier<T> {
+
+    /**
+     * Overwrite every stored field of the target with the value it has in the source. Transient fields are left alone.
+     */
+    void copy(T source, T target);
+}
@@ -0,0 +1,12 @@
+package net.hypixel.nerdbot.api.repository;
+
+/**
+ * Creates a new entity for a {@link Repository} from the identifier it should have
+ *
+ * @param <T> The type of the entity
+ */
+@FunctionalInterface
+public interface EntityFactory<T> {
+
+    T create(String id);
+}
@@ -0,0 +1,15 @@
+package net.hypixel.nerdbot.api.repository;
+
+/**
+ * Reads the identifier of an entity stored in a {@link Repository}
+ *
+ * @param <T> The type of the entity
+ */
+@FunctionalInterface
+public interface IdExtractor<T> {
+
+    /**
+     * @return The identifier of the entity as a string, or null if it does not have one
+     */
+    String getId(T entity);
+}
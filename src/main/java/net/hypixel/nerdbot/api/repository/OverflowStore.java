@@ -0,0 +1,152 @@
+package net.hypixel.nerdbot.api.repository;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import net.hypixel.nerdbot.metrics.PrometheusMetrics;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Second cache tier for a {@link Repository}. Holds entries that were evicted from the on-heap cache as encoded BSON
+ * in direct (off-heap) buffers, so they can be brought back without a database read while not counting towards the heap.
+ * <br><br>
+ * When the store is full the least recently spilled entries are dropped, except for entries the eviction filter
+ * rejects, such as documents with changes that have not been written to the database yet. If those alone keep the
+ * store over its limit, the store asks for them to be written so they can be dropped by the next trim.
+ */
+@Log4j2
+public class OverflowStore {
+
+    /**
+     * The default maximum amount of off-heap memory used by a single store
+     */
+    public static final long DEFAULT_MAX_BYTES = Long.getLong("repository.overflow.maxMegabytes", 256L) * 1024L * 1024L;
+
+    private final String name;
+    @Getter
+    private final long maxBytes;
+    private final Predicate<String> canEvict;
+    private final Runnable onFull;
+    // Insertion ordered, so the first entries are the ones that were spilled the longest ago
+    private final LinkedHashMap<String, ByteBuffer> entries = new LinkedHashMap<>();
+    @Getter
+    private long usedBytes;
+    private boolean full;
+
+    /**
+     * @param name     The name used in logs and metrics
+     * @param maxBytes The maximum amount of off-heap memory to use
+     * @param canEvict Whether the entry with the given ID may be dropped
+     * @param onFull   Called when the entries that may not be dropped keep the store over its limit
+     */
+    public OverflowStore(String name, long maxBytes, Predicate<String> canEvict, Runnable onFull) {
+        this.name = name;
+        this.maxBytes = maxBytes;
+        this.canEvict = canEvict;
+        this.onFull = onFull;
+    }
+
+    /**
+     * Store an encoded entry, replacing any previous entry with the same ID
+     */
+    public synchronized void put(String id, ByteBuffer data) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.remaining());
+        buffer.put(data.duplicate()).flip();
+
+        ByteBuffer previous = entries.remove(id);
+        entries.put(id, buffer);
+        if (previous != null) {
+            usedBytes -= previous.capacity();
+        }
+
+        usedBytes += buffer.capacity();
+        trim();
+    }
+
+    /**
+     * Remove an entry from the store
+     *
+     * @return The encoded entry, or null if it was not stored
+     */
+    @Nullable
+    public synchronized byte[] remove(String id) {
+        ByteBuffer buffer = entries.remove(id);
+
+        if (buffer == null) {
+            return null;
+        }
+
+        usedBytes -= buffer.capacity();
+        PrometheusMetrics.REPOSITORY_OVERFLOW_BYTES.labels(name).set(usedBytes);
+        return toArray(buffer);
+    }
+
+    /**
+     * Read an entry without removing it
+     *
+     * @return The encoded entry, or null if it is not stored
+     */
+    @Nullable
+    public synchronized byte[] peek(String id) {
+        ByteBuffer buffer = entries.get(id);
+        return buffer == null ? null : toArray(buffer);
+    }
+
+    public synchronized boolean contains(String id) {
+        return entries.containsKey(id);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+        PrometheusMetrics.REPOSITORY_OVERFLOW_BYTES.labels(name).set(0);
+    }
+
+    /**
+     * Drop the least recently spilled entries that may be dropped until the store is back under its limit
+     */
+    public synchronized void trim() {
+        Iterator<Map.Entry<String, ByteBuffer>> iterator = entries.entrySet().iterator();
+
+        while (usedBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, ByteBuffer> entry = iterator.next();
+
+            if (!canEvict.test(entry.getKey())) {
+                continue;
+            }
+
+            usedBytes -= entry.getValue().capacity();
+            iterator.remove();
+            log.debug("[" + name + "] Dropped " + entry.getKey() + " from the overflow store");
+        }
+
+        PrometheusMetrics.REPOSITORY_OVERFLOW_BYTES.labels(name).set(usedBytes);
+
+        if (usedBytes <= maxBytes) {
+            full = false;
+            return;
+        }
+
+        if (!full) {
+            full = true;
+            log.warn("[" + name + "] Overflow store is over its limit of " + maxBytes + " bytes with entries that have not been written yet, requesting a flush");
+        }
+
+        onFull.run();
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.capacity()];
+        buffer.duplicate().clear().get(bytes);
+        return bytes;
+    }
+}
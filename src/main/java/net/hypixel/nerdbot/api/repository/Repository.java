@@ -4,11 +4,19 @@ import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.RemovalCause;
 import com.github.benmanes.caffeine.cache.Scheduler;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.UpdateOptions;
 import com.mongodb.client.model.WriteModel;
@@ -17,31 +25,91 @@ import com.mongodb.client.result.UpdateResult;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 import net.hypixel.nerdbot.NerdBotApp;
+import net.hypixel.nerdbot.api.database.codec.GsonCodec;
+import net.hypixel.nerdbot.metrics.PrometheusMetrics;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonReader;
+import org.bson.BsonValue;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
 import org.bson.conversions.Bson;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.ParameterizedType;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Log4j2
 public abstract class Repository<T> {
 
+    /**
+     * The amount of documents requested from the database per cursor batch when loading a repository
+     */
+    public static final int LOAD_BATCH_SIZE = Integer.getInteger("repository.load.batchSize", 1_000);
+
+    /**
+     * The amount of threads used to decode and prepare documents when loading a repository
+     */
+    public static final int LOAD_THREADS = Integer.getInteger("repository.load.threads", Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    private static final DecoderContext DECODER_CONTEXT = DecoderContext.builder().build();
+    private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec();
+    // Evicted objects are encoded here rather than by the cache while it evicts them, as encoding takes the object's lock
+    private static final ExecutorService SPILL_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "repository-overflow");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     @Getter
     private final Cache<String, T> cache;
     @Getter
     private final MongoCollection<Document> mongoCollection;
+    private final MongoCollection<RawBsonDocument> rawCollection;
+    private final Codec<T> entityCodec;
+    @Getter
+    private final WriteBehindQueue<T> writeBehindQueue;
+    private final Map<String, Document> snapshots = new ConcurrentHashMap<>();
+    // Evicted objects that are still waiting to be encoded into the overflow store
+    private final Map<String, T> spilling = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<T>> pendingLoads = new ConcurrentHashMap<>();
+    private final List<RepositoryIndex<T, ?>> indexes = new CopyOnWriteArrayList<>();
+    private final Map<BsonValue, String> idsByObjectId = new ConcurrentHashMap<>();
+    private final StripedLock locks = new StripedLock(StripedLock.DEFAULT_STRIPES);
+    @Getter
+    private volatile ChangeStreamSubscriber<T> changeStreamSubscriber;
+    @Getter
+    private volatile OverflowStore overflowStore;
     private final Class<T> entityClass;
     private final String identifierFieldName;
-    private Field field;
+    private volatile IdExtractor<T> idExtractor;
+    private volatile EntityFactory<T> entityFactory;
+    private volatile boolean entityFactoryResolved;
+    private volatile EntityCopier<T> entityCopier;
 
     protected Repository(MongoClient mongoClient, String databaseName, String collectionName, String identifierFieldName) {
         this(mongoClient, databaseName, collectionName, identifierFieldName, 0, null);
@@ -53,6 +121,8 @@ public abstract class Repository<T> {
 
         MongoDatabase database = mongoClient.getDatabase(databaseName);
         this.mongoCollection = database.getCollection(collectionName);
+        this.entityCodec = new GsonCodec<>(entityClass, NerdBotApp.GSON);
+        this.rawCollection = mongoCollection.withDocumentClass(RawBsonDocument.class);
 
         Caffeine<Object, Object> builder = Caffeine.newBuilder();
 
@@ -65,31 +135,321 @@ public abstract class Repository<T> {
         }
 
         this.cache = builder
+            // Runs while the entry is being removed, so an evicted object is never missing from both the cache and the
+            // overflow tier while a flush or lookup is looking for it
+            .evictionListener((String key, T value, RemovalCause cause) -> {
+                snapshots.remove(key);
+                indexes.forEach(index -> index.remove(key));
+
+                if (value != null) {
+                    spill(key, value);
+                }
+            })
             .removalListener((String key, T value, RemovalCause cause) -> {
                 debug("Removing document with ID " + key + " from cache for reason " + cause.toString());
 
-                if (cause != RemovalCause.EXPLICIT && cause != RemovalCause.REPLACED) {
-                    saveToDatabase(value);
+                if (cause == RemovalCause.REPLACED || cause.wasEvicted()) {
+                    return;
+                }
+
+                // Runs some time after the removal, by which point the document may have been cached again
+                if (!cache.asMap().containsKey(key)) {
+                    snapshots.remove(key);
+                    indexes.forEach(index -> index.remove(key));
                 }
             })
             .build();
 
         this.identifierFieldName = identifierFieldName;
+        this.writeBehindQueue = new WriteBehindQueue<>(this);
+    }
+
+    /**
+     * Keep objects that are evicted from the cache in an off-heap {@link OverflowStore} instead of dropping them, so
+     * they can be brought back without a database read. Objects with unwritten changes are kept until they are flushed.
+     */
+    protected void enableOverflowStore() {
+        enableOverflowStore(OverflowStore.DEFAULT_MAX_BYTES);
     }
 
+    protected void enableOverflowStore(long maxBytes) {
+        // Entries with unwritten changes can't be dropped, so a full store writes them to make room
+        overflowStore = new OverflowStore(getClass().getSimpleName(), maxBytes, id -> !writeBehindQueue.isPending(id), writeBehindQueue::requestFlush);
+        log("Evicted documents will be kept in up to " + (maxBytes / 1024 / 1024) + "MB of off-heap memory");
+    }
+
+    /**
+     * Load every document in the collection into the cache in a single pass.
+     *
+     * @see #loadDocumentsIntoCache(Bson)
+     */
     public void loadAllDocumentsIntoCache() {
         log("Loading ALL documents from database into cache");
+        loadDocumentsIntoCache(Filters.empty());
+    }
+
+    /**
+     * Load every document matching a filter into the cache in a single pass.
+     * <br><br>
+     * Documents are pulled from the cursor as undecoded batches of {@link RawBsonDocument}s, then decoded and passed through
+     * {@link #onDocumentLoaded(Object, boolean)} on a bounded pool of {@link #LOAD_THREADS} threads while the next batch is being fetched.
+     * This method returns once every document has been cached.
+     *
+     * @param filter The filter documents have to match
+     */
+    public void loadDocumentsIntoCache(Bson filter) {
+        String repositoryName = getClass().getSimpleName();
+        long start = System.nanoTime();
+        AtomicInteger loaded = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        // Limits how many fetched documents can wait for a worker so a slow decode can't buffer the whole collection
+        Semaphore pending = new Semaphore(LOAD_BATCH_SIZE * 2);
+        ExecutorService executor = Executors.newFixedThreadPool(LOAD_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, repositoryName + "-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
 
-        for (Document document : mongoCollection.find()) {
-            T object = documentToEntity(document);
+        try (MongoCursor<RawBsonDocument> cursor = rawCollection.find(filter).projection(getLoadProjection()).batchSize(LOAD_BATCH_SIZE).iterator()) {
+            while (cursor.hasNext()) {
+                RawBsonDocument document = cursor.next();
+                pending.acquireUninterruptibly();
 
-            if (cache.getIfPresent(getId(object)) != null) {
-                debug("Document with ID " + getId(object) + " already exists in cache");
-                continue;
+                executor.execute(() -> {
+                    try {
+                        if (loadIntoCache(decode(document))) {
+                            loaded.incrementAndGet();
+                            PrometheusMetrics.REPOSITORY_DOCUMENTS_LOADED.labels(repositoryName).inc();
+                        }
+                    } catch (Exception exception) {
+                        failed.incrementAndGet();
+                        log.error("[" + repositoryName + "] Failed to load document " + document.get(identifierFieldName), exception);
+                    } finally {
+                        pending.release();
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+
+            try {
+                if (!executor.awaitTermination(5, TimeUnit.MINUTES)) {
+                    log.warn("[" + repositoryName + "] Timed out waiting for documents to finish loading");
+                }
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
             }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1_000_000_000D;
+        PrometheusMetrics.REPOSITORY_LOAD_SECONDS.labels(repositoryName).set(seconds);
+        PrometheusMetrics.REPOSITORY_LOAD_DOCUMENTS_PER_SECOND.labels(repositoryName).set(seconds > 0 ? loaded.get() / seconds : loaded.get());
+
+        log("Loaded " + loaded.get() + " documents in " + String.format("%.2f", seconds) + "s (" + failed.get() + " failed)");
+    }
+
+    private T decode(RawBsonDocument document) {
+        T object;
+
+        try (BsonReader reader = document.asBsonReader()) {
+            object = entityCodec.decode(reader, DECODER_CONTEXT);
+        }
+
+        if (changeStreamSubscriber != null && document.containsKey("_id")) {
+            idsByObjectId.put(document.get("_id"), getId(object));
+        }
+
+        return object;
+    }
+
+    /**
+     * Start following changes made to this repository's collection by other processes, such as another instance of the bot
+     * running against the same database. Requires the database to be a replica set.
+     *
+     * @param resumeTokenDirectory The directory the position in the change stream is saved to, so that changes made while
+     *                             the bot was offline are applied when it starts again
+     *
+     * @see ChangeStreamSubscriber
+     */
+    public synchronized void startChangeStream(Path resumeTokenDirectory) {
+        if (changeStreamSubscriber != null) {
+            return;
+        }
+
+        Path resumeTokenFile = resumeTokenDirectory.resolve(mongoCollection.getNamespace().getCollectionName() + ".token");
+        changeStreamSubscriber = new ChangeStreamSubscriber<>(this, resumeTokenFile);
+        changeStreamSubscriber.start();
+    }
+
+    public synchronized void stopChangeStream() {
+        if (changeStreamSubscriber != null) {
+            changeStreamSubscriber.stop();
+            changeStreamSubscriber = null;
+        }
+    }
+
+    /**
+     * Apply a document that was inserted, updated or replaced by another process.
+     * <br><br>
+     * Changes are skipped when they match the last state this repository wrote (its own writes echoed back), when the
+     * document has local changes that have not been written yet, or when an updated document is not cached, as it
+     * will be loaded from the database the next time it is needed. A cached object is updated in place while holding
+     * its lock, so code holding a reference to it keeps working on the cached object.
+     *
+     * @param objectId The _id of the document
+     * @param document The full document after the change
+     * @param inserted Whether the document was newly inserted
+     */
+    void applyRemoteChange(@Nullable BsonValue objectId, Document document, boolean inserted) {
+        Object identifier = document.get(identifierFieldName);
+        if (identifier == null) {
+            return;
+        }
+
+        String id = identifier.toString();
+        if (objectId != null) {
+            idsByObjectId.put(objectId, id);
+        }
+
+        if (writeBehindQueue.isPending(id)) {
+            debug("Ignoring remote change to document with ID " + id + " as it has local changes that have not been written yet");
+            return;
+        }
+
+        T previous = cache.getIfPresent(id);
+        if (previous == null) {
+            // A spilled copy would be stale now, so the next lookup has to read the database
+            discardSpilled(id);
+
+            if (!inserted) {
+                return;
+            }
+        }
+
+        Document state = new Document(document);
+        state.remove("_id");
+
+        if (state.equals(snapshots.get(id))) {
+            return;
+        }
+
+        T remote = documentToEntity(document);
+        onDocumentLoaded(remote, false);
+
+        if (previous == null) {
+            cache.put(id, remote);
+            snapshots.put(id, state);
+            updateIndexes(id, remote);
+            onRemoteChange(null, remote);
+            debug("Applied remote insert of document with ID " + id);
+            return;
+        }
+
+        boolean applied = locks.withLock(id, () -> {
+            // Checked again, the object may have been changed while the document was decoded
+            if (writeBehindQueue.isPending(id)) {
+                return false;
+            }
+
+            getEntityCopier().copy(remote, previous);
+            snapshots.put(id, state);
+            return true;
+        });
+
+        if (!applied) {
+            debug("Ignoring remote change to document with ID " + id + " as it was changed locally while being applied");
+            return;
+        }
+
+        updateIndexes(id, previous);
+        onRemoteChange(previous, previous);
+
+        debug("Applied remote change to document with ID " + id);
+    }
+
+    /**
+     * Remove a document that was deleted by another process from the cache
+     *
+     * @param objectId The _id of the deleted document
+     */
+    void applyRemoteDelete(BsonValue objectId) {
+        String id = idsByObjectId.remove(objectId);
+        if (id == null) {
+            return;
+        }
 
-            cacheObject(object);
+        T previous = cache.getIfPresent(id);
+        writeBehindQueue.discard(id);
+        discardSpilled(id);
+        snapshots.remove(id);
+        indexes.forEach(index -> index.remove(id));
+        cache.invalidate(id);
+
+        if (previous != null) {
+            onRemoteChange(previous, null);
+            debug("Applied remote delete of document with ID " + id);
+        }
+    }
+
+    /**
+     * Called after a cached object has been changed, inserted or removed because of a change made by another process.
+     * Changed objects are updated in place, so both arguments are then the same object.
+     *
+     * @param previous The object that was cached before the change, or null if it was not cached
+     * @param current  The object that is now cached, or null if the document was deleted
+     */
+    protected void onRemoteChange(@Nullable T previous, @Nullable T current) {
+    }
+
+    /**
+     * Cache a document that was loaded from the database, unless a newer copy of it is already cached
+     *
+     * @return True if the document was cached
+     */
+    private boolean loadIntoCache(T object) {
+        String id = getId(object);
+
+        // A spilled copy may have changes that are not in the database yet
+        if (promote(id) != null) {
+            debug("Document with ID " + id + " already exists in cache");
+            return false;
         }
+
+        boolean modified = onDocumentLoaded(object, true);
+
+        if (cache.asMap().putIfAbsent(id, object) != null) {
+            debug("Document with ID " + id + " already exists in cache");
+            return false;
+        }
+
+        updateIndexes(id, object);
+
+        if (modified) {
+            writeBehindQueue.markDirty(id);
+        }
+
+        return true;
+    }
+
+    /**
+     * Called for every document loaded from the database before it is cached, possibly from several threads at once.
+     * Used to migrate or fix up documents in the same pass that loads them.
+     *
+     * @param object   The loaded object
+     * @param bulkLoad True if the object was loaded by {@link #loadDocumentsIntoCache(Bson)}, false if it was loaded on demand by {@link #findById(String)}
+     *
+     * @return True if the object was modified and needs to be written back to the database
+     */
+    protected boolean onDocumentLoaded(T object, boolean bulkLoad) {
+        return false;
+    }
+
+    /**
+     * @return The projection used when loading every document, or null to load whole documents
+     */
+    @Nullable
+    protected Bson getLoadProjection() {
+        return null;
     }
 
     public T findById(String id) {
@@ -99,10 +459,62 @@ public abstract class Repository<T> {
             return cachedObject;
         }
 
-        Document document = mongoCollection.find(new Document(identifierFieldName, id)).first();
+        // Concurrent misses for the same ID wait for the first one to finish instead of each querying the database
+        CompletableFuture<T> pendingLoad = new CompletableFuture<>();
+        CompletableFuture<T> existingLoad = pendingLoads.putIfAbsent(id, pendingLoad);
+
+        if (existingLoad != null) {
+            debug("Waiting for pending load of document with ID " + id);
+
+            try {
+                return existingLoad.join();
+            } catch (CompletionException exception) {
+                throw exception.getCause() instanceof RuntimeException runtimeException ? runtimeException : exception;
+            }
+        }
+
+        try {
+            T object = loadById(id);
+            pendingLoad.complete(object);
+            return object;
+        } catch (RuntimeException exception) {
+            pendingLoad.completeExceptionally(exception);
+            throw exception;
+        } finally {
+            pendingLoads.remove(id, pendingLoad);
+        }
+    }
+
+    private T loadById(String id) {
+        // Another thread may have finished loading the document between the cache miss and claiming the load
+        T cachedObject = promote(id);
+        if (cachedObject != null) {
+            return cachedObject;
+        }
+
+        RawBsonDocument document = rawCollection.find(new Document(identifierFieldName, id)).first();
         if (document != null) {
-            T object = documentToEntity(document);
-            cacheObject(id, object);
+            T loadedObject = decode(document);
+            boolean modified = onDocumentLoaded(loadedObject, false);
+            // The document may have been spilled while it was being read, in which case the spilled copy is newer
+            T object = cache.asMap().compute(id, (key, current) -> {
+                if (current != null) {
+                    return current;
+                }
+
+                T spilled = takeSpilled(key);
+                return spilled != null ? spilled : loadedObject;
+            });
+            updateIndexes(id, object);
+            debug("Cached document with ID " + id);
+
+            if (object != loadedObject) {
+                return object;
+            }
+
+            if (modified) {
+                writeBehindQueue.markDirty(id);
+            }
 
             return object;
         }
@@ -111,43 +523,159 @@ public abstract class Repository<T> {
         return null;
     }
 
-    public T findOrCreateById(String id, Object... parameters) {
+    /**
+     * Move an object from the overflow tier back into the cache
+     *
+     * @return The cached or promoted object, or null if the object is in neither
+     */
+    @Nullable
+    private T promote(String id) {
+        T cachedObject = cache.getIfPresent(id);
+        if (cachedObject != null) {
+            return cachedObject;
+        }
+
+        // Computed so that it can't interleave with the object being spilled
+        T object = cache.asMap().computeIfAbsent(id, this::takeSpilled);
+        if (object != null) {
+            updateIndexes(id, object);
+            debug("Promoted document with ID " + id + " from the overflow tier");
+        }
+
+        return object;
+    }
+
+    /**
+     * Move an evicted object out of the cache's heap. Without an overflow store, objects with unwritten changes are
+     * handed to the {@link WriteBehindQueue} so that eviction never has to wait on a database write.
+     * <br><br>
+     * Called by the cache while it evicts the object, so it can not interleave with the object being promoted. The
+     * object is only encoded later on another thread, as encoding takes its lock and a thread holding that lock may be
+     * waiting on the cache. Until then it is kept as it is and can still be promoted or flushed.
+     */
+    private void spill(String id, T object) {
+        OverflowStore store = overflowStore;
+
+        if (store != null) {
+            spilling.put(id, object);
+            SPILL_EXECUTOR.execute(() -> encodeSpilled(store, id, object));
+        } else if (writeBehindQueue.isPending(id)) {
+            writeBehindQueue.holdEvicted(id, object);
+        }
+    }
+
+    private void encodeSpilled(OverflowStore store, String id, T object) {
         try {
-            T existingObject = findById(id);
+            RawBsonDocument document = locks.withLock(id, () -> new RawBsonDocument(object, entityCodec));
 
-            if (existingObject != null) {
-                return existingObject;
-            }
+            // Only stored if the object was not promoted, discarded or spilled again while it was being encoded
+            spilling.computeIfPresent(id, (key, spilled) -> {
+                if (spilled != object) {
+                    return spilled;
+                }
+
+                store.put(id, document.getByteBuffer().asNIO());
+                return null;
+            });
+        } catch (Exception exception) {
+            log.error("[" + getClass().getSimpleName() + "] Failed to spill document with ID " + id + ", keeping it on the heap", exception);
+        }
+    }
+
+    @Nullable
+    private T takeSpilled(String id) {
+        T object = spilling.remove(id);
+        if (object != null) {
+            return object;
+        }
 
-            List<Class<?>> constructorParameters = new ArrayList<>(List.of(parameters.getClass()));
-            T object = entityClass.getConstructor(constructorParameters.toArray(new Class[0])).newInstance(parameters);
+        OverflowStore store = overflowStore;
+        byte[] spilled = store != null ? store.remove(id) : null;
+        return spilled != null ? decodeSpilled(spilled) : writeBehindQueue.takeEvicted(id);
+    }
 
-            log.debug("Created new instance of " + entityClass.getSimpleName() + " with parameters " + Arrays.toString(parameters));
+    private void discardSpilled(String id) {
+        spilling.remove(id);
 
-            cacheObject(id, object);
-            saveToDatabase(object);
+        if (overflowStore != null) {
+            overflowStore.remove(id);
+        }
 
+        writeBehindQueue.takeEvicted(id);
+    }
+
+    /**
+     * Get the latest state of an object for writing, including objects that have been evicted from the cache
+     * but not written yet. Does not promote spilled objects.
+     */
+    @Nullable
+    T getEntityForFlush(String id) {
+        T object = cache.getIfPresent(id);
+        if (object == null) {
+            object = spilling.get(id);
+        }
+
+        if (object != null) {
             return object;
-        } catch (NoSuchMethodException e) {
-            log.error("Could not find constructor for " + entityClass.getSimpleName() + " with parameters " + Arrays.toString(parameters));
-        } catch (IllegalAccessException | InstantiationException | InvocationTargetException e) {
-            log.error("Error creating new instance of " + entityClass.getSimpleName() + " with parameters " + Arrays.toString(parameters));
         }
 
-        return null;
+        OverflowStore store = overflowStore;
+        byte[] spilled = store != null ? store.peek(id) : null;
+        return spilled != null ? decodeSpilled(spilled) : writeBehindQueue.getEvicted(id);
+    }
+
+    private T decodeSpilled(byte[] bytes) {
+        try (BsonReader reader = new RawBsonDocument(bytes).asBsonReader()) {
+            return entityCodec.decode(reader, DECODER_CONTEXT);
+        }
+    }
+
+    /**
+     * Find an object by its ID, creating and saving a new one through the repository's {@link EntityFactory} if it does not exist
+     *
+     * @param id The ID of the object
+     *
+     * @return The existing or created object, or null if the object does not exist and cannot be created
+     */
+    public T findOrCreateById(String id) {
+        T existingObject = findById(id);
+
+        if (existingObject != null) {
+            return existingObject;
+        }
+
+        if (getEntityFactory() == null) {
+            log.error("Could not create new instance of " + entityClass.getSimpleName() + " with ID " + id + " as it does not have a constructor taking an ID");
+            return null;
+        }
+
+        T object = entityFactory.create(id);
+        log.debug("Created new instance of " + entityClass.getSimpleName() + " with ID " + id);
+
+        cacheObject(id, object);
+        saveToDatabase(object);
+
+        return object;
     }
 
     public T getByIndex(int index) {
-        return getAll()
-            .stream()
+        return stream()
             .skip(index)
             .limit(1)
             .findFirst()
             .orElse(null);
     }
 
+    /**
+     * Put an object into the cache and mark it as modified so that it will be written on the next flush
+     *
+     * @param id     The ID of the object
+     * @param object The object to cache
+     */
     public void cacheObject(String id, T object) {
         cache.put(id, object);
+        updateIndexes(id, object);
+        writeBehindQueue.markDirty(id);
         debug("Cached document with ID " + id);
     }
 
@@ -156,37 +684,307 @@ public abstract class Repository<T> {
         cacheObject(id, object);
     }
 
-    public UpdateResult saveToDatabase(T object) {
+    /**
+     * Mark an already cached object as modified so that it will be written on the next flush
+     * without blocking the calling thread on a database write
+     *
+     * @param object The modified object
+     */
+    public void markDirty(T object) {
         String id = getId(object);
-        Document document = entityToDocument(object);
-        Bson updateOperation = new Document("$set", document);
+        updateIndexes(id, object);
+        writeBehindQueue.markDirty(id);
+    }
 
-        return mongoCollection.updateOne(new Document(identifierFieldName, id), updateOperation, new UpdateOptions().upsert(true));
+    /**
+     * Change an object while holding its lock, then mark it dirty
+     *
+     * @param id      The ID of the object
+     * @param updater Changes the object, must not access the repository
+     *
+     * @return The changed object, or null if it does not exist
+     */
+    @Nullable
+    public T update(String id, Consumer<T> updater) {
+        T object = findById(id);
+
+        if (object == null) {
+            return null;
+        }
+
+        // Marked dirty under the lock, so a remote change can never overwrite the update before it is written
+        locks.withLock(id, () -> {
+            updater.accept(object);
+            writeBehindQueue.markDirty(id);
+        });
+        updateIndexes(id, object);
+        return object;
     }
 
+    /**
+     * Change an object while holding its lock and mark it dirty under the same lock if the updater reports a change, so
+     * a remote change can never overwrite the change before it is written
+     *
+     * @param object  The object to change
+     * @param updater Changes the object and returns whether anything changed, must not access the repository
+     *
+     * @return Whether the object was changed
+     */
+    public boolean updateIfChanged(T object, Predicate<T> updater) {
+        String id = getId(object);
+        boolean changed = locks.withLock(id, () -> {
+            if (!updater.test(object)) {
+                return false;
+            }
+
+            writeBehindQueue.markDirty(id);
+            return true;
+        });
+
+        if (changed) {
+            updateIndexes(id, object);
+        }
+
+        return changed;
+    }
 
+    /**
+     * Read or change an object while holding its lock. Objects are only written to the database while holding their
+     * lock, so nothing done here is ever partially written. Changes should be made through {@link #update(String, Consumer)}
+     * or {@link #updateIfChanged(Object, Predicate)}, which mark the object dirty before the lock is released.
+     *
+     * @param object The object to lock
+     * @param action Reads or changes the object, must not access the repository
+     *
+     * @return The result of the action
+     */
+    public <R> R withLock(T object, Function<T, R> action) {
+        return locks.withLock(getId(object), () -> action.apply(object));
+    }
+
+    /**
+     * Create a secondary index over the cached objects. Objects are re-indexed whenever they are cached
+     * or {@link #markDirty(Object) marked dirty}, so changes that are not marked dirty will not be picked up.
+     *
+     * @param keyExtractor Produces the keys an object should be indexed by
+     *
+     * @return The new index
+     */
+    protected <K> RepositoryIndex<T, K> addIndex(Function<T, Collection<K>> keyExtractor) {
+        return registerIndex(new RepositoryIndex<>(keyExtractor, false));
+    }
+
+    /**
+     * Create a secondary index that keeps its keys sorted, allowing range lookups such as
+     * every object with a timestamp in the next minute
+     *
+     * @see #addIndex(Function)
+     */
+    protected <K extends Comparable<? super K>> RepositoryIndex<T, K> addSortedIndex(Function<T, Collection<K>> keyExtractor) {
+        return registerIndex(new RepositoryIndex<>(keyExtractor, true));
+    }
+
+    private <K> RepositoryIndex<T, K> registerIndex(RepositoryIndex<T, K> index) {
+        cache.asMap().forEach(index::update);
+        indexes.add(index);
+        return index;
+    }
+
+    /**
+     * @return The cached objects with the given IDs, skipping any that are no longer cached
+     */
+    protected List<T> getCachedObjects(Collection<String> ids) {
+        List<T> objects = new ArrayList<>(ids.size());
+
+        for (String id : ids) {
+            T object = cache.getIfPresent(id);
+            if (object != null) {
+                objects.add(object);
+            }
+        }
+
+        return objects;
+    }
+
+    private void updateIndexes(String id, T object) {
+        for (RepositoryIndex<T, ?> index : indexes) {
+            index.update(id, object);
+        }
+    }
+
+    /**
+     * Write an object to the database right away instead of waiting for the next flush. Runs while no flush is
+     * running, so both never build their update from the same snapshot and send the same changes twice.
+     * <br><br>
+     * The object stops being dirty before it is converted, so changes made while it is being written are picked up by
+     * the next flush. Remote changes are ignored until the write is done, as they are for dirty objects. If the write fails it is marked dirty again and retried by the next flush.
+     */
+    public UpdateResult saveToDatabase(T object) {
+        String id = getId(object);
+
+        return writeBehindQueue.withFlushLock(() -> {
+            writeBehindQueue.beginWrite(id);
+
+            try {
+                Document document = toDocument(id, object);
+                Document updateOperation = createUpdate(id, document);
+
+                if (updateOperation.isEmpty()) {
+                    debug("Document with ID " + id + " has not changed since it was last saved");
+                    return UpdateResult.acknowledged(1L, 0L, null);
+                }
+
+                UpdateResult result = mongoCollection.updateOne(Filters.eq(identifierFieldName, id), updateOperation, new UpdateOptions().upsert(true));
+                snapshots.put(id, document);
+                return result;
+            } catch (MongoException exception) {
+                // The write may have been applied, so the next write has to be a full one
+                snapshots.remove(id);
+                writeBehindQueue.markDirty(id);
+                throw exception;
+            } finally {
+                writeBehindQueue.endWrite(id);
+            }
+        });
+    }
+
+    /**
+     * Write every document that has been modified since it was last written to the database
+     *
+     * @return The result of the bulk write, or null if there were no modified documents
+     */
     @Nullable
     public BulkWriteResult saveAllToDatabase() {
-        log("Saving all documents in cache to database (found " + cache.asMap().size() + ")");
+        log("Saving modified documents in cache to database (found " + writeBehindQueue.size() + " of " + cache.estimatedSize() + ")");
+        return writeBehindQueue.flush();
+    }
 
-        List<WriteModel<Document>> updates = new ArrayList<>();
+    /**
+     * Build the update for a document, only containing the fields that changed since it was last written.
+     * Documents that have not been written since they were loaded are written in full.
+     *
+     * @param id       The ID of the document
+     * @param document The current state of the document
+     *
+     * @return The update operations, which are empty if nothing changed
+     */
+    Document createUpdate(String id, Document document) {
+        Document snapshot = snapshots.get(id);
 
-        getAll().stream().map(this::entityToDocument).forEach(doc -> {
-            Bson filter = Filters.eq(identifierFieldName, doc.get(identifierFieldName));
-            Bson update = new Document("$set", doc);
-            updates.add(new UpdateOneModel<>(filter, update, new UpdateOptions().upsert(true)));
-        });
+        if (snapshot == null) {
+            return new Document("$set", document);
+        }
 
-        debug("Prepared " + updates.size() + " update operations");
+        return DocumentDiff.diff(snapshot, document);
+    }
 
-        if (!updates.isEmpty()) {
-            return mongoCollection.bulkWrite(updates);
+    @Nullable
+    WriteModel<Document> createUpdateModel(String id, Document document) {
+        Document update = createUpdate(id, document);
+
+        if (update.isEmpty()) {
+            return null;
         }
 
-        return null;
+        return new UpdateOneModel<>(Filters.eq(identifierFieldName, id), update, new UpdateOptions().upsert(true));
+    }
+
+    void updateSnapshot(String id, @Nullable Document document) {
+        // Spilled objects are written in full after they are promoted, so don't keep snapshots for them
+        if (document == null || cache.getIfPresent(id) == null) {
+            snapshots.remove(id);
+        } else {
+            snapshots.put(id, document);
+        }
+    }
+
+    /**
+     * @return The ID of every document in the collection, read with a single query that only returns the ID field
+     */
+    public Set<String> findAllIds() {
+        Set<String> ids = new HashSet<>();
+        Bson projection = Projections.fields(Projections.include(identifierFieldName), Projections.excludeId());
+
+        try (MongoCursor<Document> cursor = mongoCollection.find().projection(projection).batchSize(LOAD_BATCH_SIZE).iterator()) {
+            while (cursor.hasNext()) {
+                Object id = cursor.next().get(identifierFieldName);
+
+                if (id != null) {
+                    ids.add(id.toString());
+                }
+            }
+        }
+
+        return ids;
+    }
+
+    /**
+     * Insert new objects with unordered bulk inserts of up to {@link #LOAD_BATCH_SIZE} documents and cache them.
+     * Objects that were inserted by someone else in the meantime are skipped.
+     *
+     * @param objects The objects to insert, none of which should exist in the database
+     *
+     * @return The amount of objects that were inserted
+     */
+    public int insertAll(Collection<T> objects) {
+        List<T> batch = new ArrayList<>(LOAD_BATCH_SIZE);
+        int inserted = 0;
+
+        for (T object : objects) {
+            batch.add(object);
+
+            if (batch.size() == LOAD_BATCH_SIZE) {
+                inserted += insertBatch(batch);
+                batch.clear();
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            inserted += insertBatch(batch);
+        }
+
+        return inserted;
+    }
+
+    private int insertBatch(List<T> batch) {
+        List<Document> documents = new ArrayList<>(batch.size());
+        batch.forEach(object -> documents.add(entityToDocument(object)));
+        Set<Integer> failedIndexes = new HashSet<>();
+
+        try {
+            mongoCollection.insertMany(documents, new InsertManyOptions().ordered(false));
+        } catch (MongoBulkWriteException exception) {
+            for (BulkWriteError error : exception.getWriteErrors()) {
+                failedIndexes.add(error.getIndex());
+
+                if (error.getCategory() != ErrorCategory.DUPLICATE_KEY) {
+                    log.error("[" + getClass().getSimpleName() + "] Failed to insert document " + getId(batch.get(error.getIndex())) + ": " + error.getMessage());
+                }
+            }
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            if (failedIndexes.contains(i)) {
+                continue;
+            }
+
+            T object = batch.get(i);
+            String id = getId(object);
+
+            // Not marked dirty as the document was just written, and written in full on its first change as there is no snapshot
+            if (cache.asMap().putIfAbsent(id, object) == null) {
+                updateIndexes(id, object);
+            }
+        }
+
+        return batch.size() - failedIndexes.size();
     }
 
     public DeleteResult deleteFromDatabase(String id) {
+        writeBehindQueue.discard(id);
+        discardSpilled(id);
+        snapshots.remove(id);
+        indexes.forEach(index -> index.remove(id));
         cache.invalidate(id);
         log("Deleting document with ID " + id + " from database");
 
@@ -194,43 +992,115 @@ public abstract class Repository<T> {
     }
 
     protected String getId(T entity) {
-        try {
-            if (field == null) {
-                field = entity.getClass().getDeclaredField(identifierFieldName);
-            }
+        IdExtractor<T> extractor = idExtractor;
 
-            Object value = field.get(entity);
-            return value != null ? value.toString() : null;
-        } catch (NoSuchFieldException | IllegalAccessException exception) {
-            throw new RuntimeException("Error accessing identifier field: " + identifierFieldName, exception);
+        if (extractor == null) {
+            extractor = idExtractor = EntityAccessors.createIdExtractor(entityClass, identifierFieldName);
         }
+
+        return extractor.getId(entity);
     }
 
-    public Document entityToDocument(Object entity) {
-        return Document.parse(NerdBotApp.GSON.toJson(entity));
+    /**
+     * Replace the generated accessors for the entities in this repository. Called by the {@link RepositoryManager}
+     * when the repository is registered so that they are not generated on the first load or save.
+     */
+    void setEntityAccessors(IdExtractor<T> idExtractor, @Nullable EntityFactory<T> entityFactory) {
+        this.idExtractor = idExtractor;
+        this.entityFactory = entityFactory;
+        this.entityFactoryResolved = true;
+    }
+
+    private EntityCopier<T> getEntityCopier() {
+        EntityCopier<T> copier = entityCopier;
+
+        if (copier == null) {
+            copier = entityCopier = EntityAccessors.createEntityCopier(entityClass);
+        }
+
+        return copier;
+    }
+
+    @Nullable
+    private EntityFactory<T> getEntityFactory() {
+        if (!entityFactoryResolved) {
+            entityFactory = EntityAccessors.createEntityFactory(entityClass);
+            entityFactoryResolved = true;
+        }
+
+        return entityFactory;
+    }
+
+    Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    String getIdentifierFieldName() {
+        return identifierFieldName;
+    }
+
+    /**
+     * Convert an object to a document while holding its lock, so changes made under the lock are never half included
+     */
+    Document toDocument(String id, T entity) {
+        return locks.withLock(id, () -> entityToDocument(entity));
+    }
+
+    public Document entityToDocument(T entity) {
+        return new RawBsonDocument(entity, entityCodec).decode(DOCUMENT_CODEC);
     }
 
     protected T documentToEntity(Document document) {
-        debug("Converting document to entity " + entityClass + ": " + document.toJson());
-        return NerdBotApp.GSON.fromJson(document.toJson(), entityClass);
+        BsonDocument bsonDocument = document.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry());
+
+        try (BsonReader reader = new BsonDocumentReader(bsonDocument)) {
+            return entityCodec.decode(reader, DECODER_CONTEXT);
+        }
     }
 
     public boolean isEmpty() {
         return cache.asMap().isEmpty();
     }
 
+    /**
+     * Copy every cached object into a new list. Prefer {@link #stream()} or {@link #forEach(Consumer)}
+     * unless a stable copy is actually needed, such as for sorting or paging.
+     *
+     * @return A new mutable list of every cached object
+     */
     public List<T> getAll() {
         return new ArrayList<>(cache.asMap().values());
     }
 
+    /**
+     * A read-only stream over the cached objects that does not copy the cache. The stream is weakly consistent:
+     * it never throws {@link java.util.ConcurrentModificationException} and may or may not reflect objects that are
+     * cached or removed while it is being consumed. It supports short-circuiting operations and can be
+     * {@link Stream#parallel() split} across threads.
+     *
+     * @return A stream of every cached object
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * @return A weakly consistent spliterator over the cached objects
+     *
+     * @see #stream()
+     */
+    public Spliterator<T> spliterator() {
+        return cache.asMap().values().spliterator();
+    }
+
     public Collection<T> filter(Predicate<T> filter) {
-        return getAll().stream()
+        return stream()
             .filter(filter)
             .toList();
     }
 
     public void forEach(Consumer<T> consumer) {
-        getAll().forEach(consumer);
+        cache.asMap().values().forEach(consumer);
     }
 
     private void log(String message) {
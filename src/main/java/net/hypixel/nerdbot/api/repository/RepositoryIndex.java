@@ -0,0 +1,133 @@
+package net.hypixel.nerdbot.api.repository;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+/**
+ * A secondary index over the cached objects of a {@link Repository}, mapping each key produced by the key extractor
+ * to the IDs of the objects that produced it. An object can produce any amount of keys, such as one per badge.
+ * <br><br>
+ * Indexes are created with {@link Repository#addIndex(Function)} or {@link Repository#addSortedIndex(Function)} and
+ * are updated by the repository whenever an object is cached, marked dirty or removed from the cache.
+ *
+ * @param <T> The type of the indexed objects
+ * @param <K> The type of the keys
+ */
+@Log4j2
+public class RepositoryIndex<T, K> {
+
+    private final Function<T, Collection<K>> keyExtractor;
+    private final Map<K, Set<String>> idsByKey;
+    private final Map<String, Set<K>> keysById = new ConcurrentHashMap<>();
+
+    RepositoryIndex(Function<T, Collection<K>> keyExtractor, boolean sorted) {
+        this.keyExtractor = keyExtractor;
+        this.idsByKey = sorted ? new ConcurrentSkipListMap<>() : new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Re-index an object, removing its ID from any keys it no longer produces
+     */
+    synchronized void update(String id, T object) {
+        Set<K> newKeys = extractKeys(object);
+        Set<K> oldKeys = newKeys.isEmpty() ? keysById.remove(id) : keysById.put(id, newKeys);
+
+        if (oldKeys != null) {
+            for (K key : oldKeys) {
+                if (!newKeys.contains(key)) {
+                    removeId(key, id);
+                }
+            }
+        }
+
+        for (K key : newKeys) {
+            idsByKey.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    synchronized void remove(String id) {
+        Set<K> oldKeys = keysById.remove(id);
+
+        if (oldKeys != null) {
+            oldKeys.forEach(key -> removeId(key, id));
+        }
+    }
+
+    /**
+     * @return A read-only view of the IDs of every object that produced the key
+     */
+    public Set<String> getIds(K key) {
+        Set<String> ids = idsByKey.get(key);
+        return ids == null ? Collections.emptySet() : Collections.unmodifiableSet(ids);
+    }
+
+    /**
+     * Get the IDs of every object that produced a key in the given range. Only supported by sorted indexes.
+     *
+     * @param fromKey The lowest key, inclusive
+     * @param toKey   The highest key, exclusive
+     *
+     * @return The IDs of the objects in the range
+     */
+    public Set<String> getIds(K fromKey, K toKey) {
+        if (!(idsByKey instanceof NavigableMap<K, Set<String>> sortedIds)) {
+            throw new UnsupportedOperationException("Range lookups are only supported by sorted indexes");
+        }
+
+        Set<String> ids = new HashSet<>();
+        sortedIds.subMap(fromKey, true, toKey, false).values().forEach(ids::addAll);
+        return ids;
+    }
+
+    /**
+     * @return A read-only view of every key produced by at least one object
+     */
+    public Set<K> getKeys() {
+        return Collections.unmodifiableSet(idsByKey.keySet());
+    }
+
+    public int size() {
+        return keysById.size();
+    }
+
+    private void removeId(K key, String id) {
+        idsByKey.computeIfPresent(key, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private Set<K> extractKeys(T object) {
+        try {
+            Collection<K> keys = keyExtractor.apply(object);
+
+            if (keys == null || keys.isEmpty()) {
+                return Collections.emptySet();
+            }
+
+            Set<K> result = new HashSet<>(keys);
+            result.remove(null);
+            return result;
+        } catch (RuntimeException exception) {
+            log.error("Failed to extract index keys from " + object, exception);
+            return Collections.emptySet();
+        }
+    }
+
+    /**
+     * Helper for key extractors of objects that produce at most one key
+     */
+    public static <K> Collection<K> single(K key) {
+        return key == null ? Collections.emptyList() : List.of(key);
+    }
+}
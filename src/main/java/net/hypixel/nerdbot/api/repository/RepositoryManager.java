@@ -48,6 +48,7 @@ public class RepositoryManager {
 
                 if (isRepository(clazz) && !repositories.containsKey(clazz)) {
                     Object repositoryInstance = createRepositoryInstance(clazz, mongoClient, databaseName);
+                    createEntityAccessors((Repository<?>) repositoryInstance);
                     repositories.put(clazz, repositoryInstance);
                     log.info("Registered repository: " + clazz.getName());
                 }
@@ -61,6 +62,19 @@ public class RepositoryManager {
         return Repository.class.isAssignableFrom(clazz);
     }
 
+    /**
+     * Generate the identifier extractor and entity factory for a repository up front so loading and saving documents
+     * never has to fall back to reflection
+     */
+    private <T> void createEntityAccessors(Repository<T> repository) {
+        Class<T> entityClass = repository.getEntityClass();
+
+        repository.setEntityAccessors(
+            EntityAccessors.createIdExtractor(entityClass, repository.getIdentifierFieldName()),
+            EntityAccessors.createEntityFactory(entityClass)
+        );
+    }
+
     private <T> T createRepositoryInstance(Class<T> repositoryClass, MongoClient mongoClient, String databaseName) throws RepositoryException {
         try {
             Constructor<T> constructor = repositoryClass.getDeclaredConstructor(MongoClient.class, String.class);
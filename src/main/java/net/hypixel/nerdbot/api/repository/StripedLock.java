@@ -0,0 +1,57 @@
+package net.hypixel.nerdbot.api.repository;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A fixed amount of locks shared between IDs by hash, so objects can be locked individually without keeping a lock
+ * per object. Two IDs may share a lock, so code holding one must never wait on another object's lock.
+ */
+public class StripedLock {
+
+    /**
+     * The default amount of locks per repository
+     */
+    public static final int DEFAULT_STRIPES = Integer.getInteger("repository.lockStripes", 64);
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    public StripedLock(int stripes) {
+        // Rounded up to a power of two so a stripe can be picked with a mask
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.locks = new ReentrantLock[size];
+        this.mask = size - 1;
+
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public ReentrantLock get(String id) {
+        int hash = id.hashCode();
+        return locks[(hash ^ (hash >>> 16)) & mask];
+    }
+
+    public <R> R withLock(String id, Supplier<R> action) {
+        ReentrantLock lock = get(id);
+        lock.lock();
+
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void withLock(String id, Runnable action) {
+        ReentrantLock lock = get(id);
+        lock.lock();
+
+        try {
+            action.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
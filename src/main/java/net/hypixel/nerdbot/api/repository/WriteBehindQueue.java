@@ -0,0 +1,271 @@
+package net.hypixel.nerdbot.api.repository;
+
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.WriteModel;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.bson.Document;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Tracks which documents in a {@link Repository} have been modified since they were last written and flushes
+ * them to the database as a single unordered bulk write, either when enough documents are dirty or on a fixed interval.
+ * <br><br>
+ * Marking the same ID dirty multiple times before a flush only results in one write containing the latest state.
+ */
+@Log4j2
+public class WriteBehindQueue<T> {
+
+    /**
+     * The amount of dirty documents that will trigger an early flush
+     */
+    public static final int DEFAULT_BATCH_SIZE = Integer.getInteger("repository.writeBehind.batchSize", 500);
+
+    /**
+     * The interval between each scheduled flush in seconds
+     */
+    public static final long DEFAULT_FLUSH_INTERVAL_SECONDS = Long.getLong("repository.writeBehind.intervalSeconds", 30L);
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "repository-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final BulkWriteOptions BULK_WRITE_OPTIONS = new BulkWriteOptions().ordered(false);
+
+    private final Repository<T> repository;
+    private final Set<String> dirtyIds = ConcurrentHashMap.newKeySet();
+    // Documents that stopped being dirty because they are being written, until the write and its snapshot are done
+    private final Set<String> writingIds = ConcurrentHashMap.newKeySet();
+    private final Map<String, T> evicted = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushQueued = new AtomicBoolean(false);
+    @Getter
+    private final int batchSize;
+    /**
+     * Whether the last flush failed to write its documents, which are then retried on the next flush
+     */
+    @Getter
+    private volatile boolean lastFlushFailed;
+
+    public WriteBehindQueue(Repository<T> repository) {
+        this(repository, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public WriteBehindQueue(Repository<T> repository, int batchSize, long flushInterval, TimeUnit timeUnit) {
+        this.repository = repository;
+        this.batchSize = batchSize;
+
+        SCHEDULER.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (Exception exception) {
+                log.error("Failed to flush dirty documents for " + repository.getClass().getSimpleName(), exception);
+            }
+        }, flushInterval, flushInterval, timeUnit);
+    }
+
+    /**
+     * Mark a document as modified so that it is included in the next flush
+     *
+     * @param id The ID of the document
+     */
+    public void markDirty(String id) {
+        if (id == null) {
+            return;
+        }
+
+        if (dirtyIds.add(id) && dirtyIds.size() >= batchSize) {
+            requestFlush();
+        }
+    }
+
+    /**
+     * Hold on to a dirty document that was evicted from the cache until a flush has written it,
+     * instead of writing it on the thread that evicted it
+     *
+     * @param id     The ID of the document
+     * @param entity The evicted document
+     */
+    void holdEvicted(String id, T entity) {
+        evicted.put(id, entity);
+        requestFlush();
+    }
+
+    @Nullable
+    T getEvicted(String id) {
+        return evicted.get(id);
+    }
+
+    @Nullable
+    T takeEvicted(String id) {
+        return evicted.remove(id);
+    }
+
+    /**
+     * Flush on the scheduler thread as soon as possible, unless a requested flush is already waiting to run
+     */
+    void requestFlush() {
+        if (flushQueued.compareAndSet(false, true)) {
+            SCHEDULER.execute(() -> {
+                flushQueued.set(false);
+                flush();
+            });
+        }
+    }
+
+    private void releaseEvicted(String id) {
+        // Keep the document if it was modified and evicted again while it was being written
+        evicted.computeIfPresent(id, (key, entity) -> dirtyIds.contains(key) ? entity : null);
+    }
+
+    /**
+     * Remove a document from the dirty set without writing it
+     *
+     * @param id The ID of the document
+     *
+     * @return True if the document was dirty
+     */
+    public boolean discard(String id) {
+        return id != null && dirtyIds.remove(id);
+    }
+
+    public boolean isDirty(String id) {
+        return dirtyIds.contains(id);
+    }
+
+    /**
+     * @return True if the document is dirty or still being written, in which case the database and its snapshot may
+     * not have its latest state yet
+     */
+    public boolean isPending(String id) {
+        // Checked in the opposite order to beginWrite, so a document moving between the two sets is never missed
+        return dirtyIds.contains(id) || writingIds.contains(id);
+    }
+
+    /**
+     * Stop tracking a document as dirty because it is about to be written. It stays {@link #isPending(String) pending}
+     * until {@link #endWrite(String)} is called.
+     */
+    void beginWrite(String id) {
+        writingIds.add(id);
+        dirtyIds.remove(id);
+    }
+
+    /**
+     * Called once a document has been written and its snapshot updated, or marked dirty again because the write failed
+     */
+    void endWrite(String id) {
+        writingIds.remove(id);
+    }
+
+    public int size() {
+        return dirtyIds.size();
+    }
+
+    /**
+     * Run a write of documents in this queue's repository while no flush is running
+     *
+     * @param write The write to run
+     *
+     * @return The result of the write
+     */
+    <R> R withFlushLock(Supplier<R> write) {
+        flushLock.lock();
+
+        try {
+            return write.get();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Write every dirty document to the database in one bulk write, including documents that were evicted from the cache since they were modified.
+     * Documents that failed to be written are marked dirty again so that they will be retried on the next flush.
+     *
+     * @return The result of the bulk write, or null if there was nothing to write or the write failed
+     */
+    @Nullable
+    public BulkWriteResult flush() {
+        flushLock.lock();
+        boolean written = false;
+
+        try {
+            Map<String, Document> documents = new HashMap<>();
+            List<WriteModel<Document>> updates = new ArrayList<>(dirtyIds.size());
+            List<String> writing = new ArrayList<>(dirtyIds.size());
+
+            try {
+                for (String id : dirtyIds) {
+                    beginWrite(id);
+                    writing.add(id);
+
+                    T entity = repository.getEntityForFlush(id);
+                    if (entity == null) {
+                        endWrite(id);
+                        continue; // Deleted since it was modified
+                    }
+
+                    Document document = repository.toDocument(id, entity);
+                    WriteModel<Document> update = repository.createUpdateModel(id, document);
+                    if (update == null) {
+                        releaseEvicted(id);
+                        endWrite(id);
+                        continue; // Nothing changed since the last write
+                    }
+
+                    documents.put(id, document);
+                    updates.add(update);
+                }
+
+                if (updates.isEmpty()) {
+                    lastFlushFailed = false;
+                    return null;
+                }
+
+                BulkWriteResult result = repository.getMongoCollection().bulkWrite(updates, BULK_WRITE_OPTIONS);
+                lastFlushFailed = false;
+                documents.forEach(repository::updateSnapshot);
+                documents.keySet().forEach(this::releaseEvicted);
+                written = true;
+                log.debug("[" + repository.getClass().getSimpleName() + "] Flushed " + updates.size() + " dirty documents (" + result.getModifiedCount() + " modified, " + result.getUpserts().size() + " upserted)");
+                return result;
+            } catch (MongoException exception) {
+                log.error("[" + repository.getClass().getSimpleName() + "] Failed to flush " + updates.size() + " dirty documents, they will be retried on the next flush", exception);
+
+                // Some writes in an unordered bulk write may have succeeded, so the next write has to be a full one
+                documents.keySet().forEach(id -> repository.updateSnapshot(id, null));
+                dirtyIds.addAll(documents.keySet());
+                lastFlushFailed = true;
+                return null;
+            } finally {
+                // Only once the snapshots are updated, so remote changes are ignored until then instead of overwriting the written state
+                writing.forEach(this::endWrite);
+            }
+        } finally {
+            flushLock.unlock();
+
+            // Spilled documents that were just written can now be dropped if the store is over its limit
+            OverflowStore overflowStore = repository.getOverflowStore();
+            if (written && overflowStore != null) {
+                overflowStore.trim();
+            }
+        }
+    }
+}
@@ -19,6 +19,8 @@ import net.dv8tion.jda.api.utils.ChunkingFilter;
 import net.dv8tion.jda.api.utils.MemberCachePolicy;
 import net.dv8tion.jda.api.utils.cache.CacheFlag;
 import net.hypixel.nerdbot.NerdBotApp;
+import net.hypixel.nerdbot.activity.ActivityPipeline;
+import net.hypixel.nerdbot.activity.VoiceSessionTracker;
 import net.hypixel.nerdbot.api.badge.BadgeManager;
 import net.hypixel.nerdbot.api.bot.Bot;
 import net.hypixel.nerdbot.api.bot.Environment;
@@ -34,10 +36,12 @@ import net.hypixel.nerdbot.cache.EmojiCache;
 import net.hypixel.nerdbot.cache.MessageCache;
 import net.hypixel.nerdbot.cache.suggestion.Suggestion;
 import net.hypixel.nerdbot.cache.suggestion.SuggestionCache;
+import net.hypixel.nerdbot.cache.suggestion.SuggestionIndex;
 import net.hypixel.nerdbot.feature.ActivityPurgeFeature;
 import net.hypixel.nerdbot.feature.CurateFeature;
 import net.hypixel.nerdbot.feature.HelloGoodbyeFeature;
 import net.hypixel.nerdbot.feature.ProfileUpdateFeature;
+import net.hypixel.nerdbot.feature.ReminderFeature;
 import net.hypixel.nerdbot.feature.UserGrabberFeature;
 import net.hypixel.nerdbot.listener.ActivityListener;
 import net.hypixel.nerdbot.listener.FunListener;
@@ -57,6 +61,7 @@ import net.hypixel.nerdbot.urlwatcher.StatusPageDataHandler;
 import net.hypixel.nerdbot.util.JsonUtil;
 import net.hypixel.nerdbot.util.Util;
 import net.hypixel.nerdbot.util.discord.ComponentDatabaseConnection;
+import net.hypixel.nerdbot.util.discord.resolver.SuggestionSortResolver;
 import net.hypixel.nerdbot.util.discord.resolver.SuggestionTypeResolver;
 import net.hypixel.nerdbot.util.discord.resolver.UserLanguageResolver;
 import org.jetbrains.annotations.NotNull;
@@ -66,6 +71,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.Date;
@@ -81,10 +87,15 @@ public class NerdBot implements Bot {
         new CurateFeature(),
         new UserGrabberFeature(),
         new ProfileUpdateFeature(),
-        new ActivityPurgeFeature()
+        new ActivityPurgeFeature(),
+        new ReminderFeature()
     );
 
     private final Database database = new Database(System.getProperty("db.mongodb.uri", "mongodb://localhost:27017/"), "skyblock_nerds");
+    @Getter
+    private final ActivityPipeline activityPipeline = new ActivityPipeline();
+    @Getter
+    private final VoiceSessionTracker voiceSessionTracker = new VoiceSessionTracker(activityPipeline);
     private JDA jda;
     private BotConfig config;
     @Getter
@@ -105,13 +116,28 @@ public class NerdBot implements Bot {
             log.warn("No badges found in config file, so no badges will be loaded!");
         }
 
+        // Follow changes before loading so nothing written by other instances during the load is missed
+        if (config.getDatabaseConfig().isChangeStreamsEnabled() && database.isConnected()) {
+            Path resumeTokenDirectory = Path.of(config.getDatabaseConfig().getResumeTokenDirectory());
+            database.getRepositoryManager().getRepositories().values().forEach(repository -> ((Repository<?>) repository).startChangeStream(resumeTokenDirectory));
+        }
+
         DiscordUserRepository discordUserRepository = database.getRepositoryManager().getRepository(DiscordUserRepository.class);
         if (discordUserRepository != null) {
-            discordUserRepository.loadAllDocumentsIntoCache();
+            if (config.getDatabaseConfig().isLazyUserLoading()) {
+                long activeSince = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(config.getDatabaseConfig().getWarmUserActivityDays());
+                discordUserRepository.loadActiveUsersIntoCache(activeSince);
+            } else {
+                discordUserRepository.loadAllDocumentsIntoCache();
+            }
         }
 
+        // Only now, so replayed activity is applied to the loaded users instead of loading them early
+        activityPipeline.startWriters();
+
         loadRemindersFromDatabase();
         startUrlWatchers();
+        voiceSessionTracker.start(Util.getMainGuild());
 
         Util.getMainGuild().loadMembers()
             .onSuccess(members -> PrometheusMetrics.TOTAL_USERS_AMOUNT.set(members.size()))
@@ -140,6 +166,14 @@ public class NerdBot implements Bot {
         log.info("Shutting down Nerd Bot...");
 
         FEATURES.forEach(BotFeature::onFeatureEnd);
+        voiceSessionTracker.stop();
+
+        if (suggestionCache != null) {
+            suggestionCache.stop();
+        }
+
+        // Apply queued activity before the repositories are saved
+        activityPipeline.stop();
 
         try {
             Map<Class<?>, Object> repositories = database.getRepositoryManager().getRepositories();
@@ -147,6 +181,7 @@ public class NerdBot implements Bot {
 
             repositories.forEach((aClass, o) -> {
                 Repository<?> repository = (Repository<?>) o;
+                repository.stopChangeStream();
                 BulkWriteResult result = repository.saveAllToDatabase();
 
                 if (result != null && result.wasAcknowledged()) {
@@ -168,13 +203,14 @@ public class NerdBot implements Bot {
     @Override
     public void create(String[] args) throws LoginException {
         loadConfig();
+        activityPipeline.start(config.getActivityJournalDirectory() == null || config.getActivityJournalDirectory().isBlank() ? null : Path.of(config.getActivityJournalDirectory()));
 
         JDABuilder builder = JDABuilder.createDefault(System.getProperty("bot.token"))
             .setEventManager(new AnnotatedEventManager())
             .addEventListeners(
                 new ModLogListener(),
                 new FeatureEventListener(),
-                new ActivityListener(),
+                new ActivityListener(activityPipeline, voiceSessionTracker),
                 new ReactionChannelListener(),
                 new SuggestionListener(),
                 new VerificationListener(),
@@ -211,8 +247,10 @@ public class NerdBot implements Bot {
             .extensionsBuilder(extensionsBuilder -> extensionsBuilder
                 .registerParameterResolver(new UserLanguageResolver())
                 .registerParameterResolver(new SuggestionTypeResolver())
+                .registerParameterResolver(new SuggestionSortResolver())
                 .registerAutocompletionTransformer(UserLanguage.class, userLanguage -> new Command.Choice(userLanguage.getName(), userLanguage.name()))
                 .registerAutocompletionTransformer(Suggestion.ChannelType.class, suggestionType -> new Command.Choice(suggestionType.getName(), suggestionType.name()))
+                .registerAutocompletionTransformer(SuggestionIndex.Sort.class, sort -> new Command.Choice(sort.getName(), sort.name()))
                 .registerAutocompletionTransformer(ForumChannel.class, forumChannel -> new Command.Choice(forumChannel.getName(), forumChannel.getId()))
                 .registerAutocompletionTransformer(ForumTag.class, forumTag -> new Command.Choice(forumTag.getName(), forumTag.getId()))
             );
@@ -263,7 +301,8 @@ public class NerdBot implements Bot {
                 return;
             }
 
-            reminder.schedule();
+            // Reminders that are due later are scheduled by the reminder feature once they are close
+            reminderRepository.schedule(reminder);
             log.info("Loaded reminder: " + reminder);
         });
 
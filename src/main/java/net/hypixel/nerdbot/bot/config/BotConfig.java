@@ -49,6 +49,11 @@ public class BotConfig {
      */
     private MetricsConfig metricsConfig = new MetricsConfig();
 
+    /**
+     * Configuration for how data is loaded from the database
+     */
+    private DatabaseConfig databaseConfig = new DatabaseConfig();
+
     /**
      * Configuration for emoji IDs
      */
@@ -91,6 +96,18 @@ public class BotConfig {
      */
     private long voiceThreshold = 60;
 
+    /**
+     * The file open voice sessions are saved to, so sessions in progress survive a restart
+     * Default value is "./voice-sessions.json"
+     */
+    private String voiceSessionJournalFile = "./voice-sessions.json";
+
+    /**
+     * The directory activity is journaled to before it is written to the database, or empty to not journal activity
+     * Default value is "./activity-journal"
+     */
+    private String activityJournalDirectory = "./activity-journal";
+
     /**
      * The interval between each curate cycle in milliseconds
      * Default value is 43200000 (12 hours)
@@ -0,0 +1,41 @@
+package net.hypixel.nerdbot.bot.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+@Getter
+@Setter
+@ToString
+public class DatabaseConfig {
+
+    /**
+     * Whether only recently active users should be loaded into the cache when the bot starts.
+     * Every other user is loaded the first time they are needed.
+     * <br><br>
+     * Default value is false, which loads every user on startup
+     */
+    private boolean lazyUserLoading = false;
+
+    /**
+     * The amount of days since a user was last active for them to be loaded on startup when {@link #lazyUserLoading} is enabled
+     * <br><br>
+     * Default value is 30 days
+     */
+    private int warmUserActivityDays = 30;
+
+    /**
+     * Whether each repository should follow a MongoDB change stream so that changes made by other instances of the bot
+     * running against the same database are applied to the cache. Requires the database to be a replica set.
+     * <br><br>
+     * Default value is false
+     */
+    private boolean changeStreamsEnabled = false;
+
+    /**
+     * The directory the change stream resume tokens are saved to
+     * <br><br>
+     * Default value is "./change-streams"
+     */
+    private String resumeTokenDirectory = "./change-streams";
+}
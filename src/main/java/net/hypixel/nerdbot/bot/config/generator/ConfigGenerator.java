@@ -10,6 +10,7 @@ import net.hypixel.nerdbot.api.badge.Badge;
 import net.hypixel.nerdbot.api.badge.TieredBadge;
 import net.hypixel.nerdbot.bot.config.BadgeConfig;
 import net.hypixel.nerdbot.bot.config.BotConfig;
+import net.hypixel.nerdbot.bot.config.DatabaseConfig;
 import net.hypixel.nerdbot.bot.config.EmojiConfig;
 import net.hypixel.nerdbot.bot.config.MetricsConfig;
 import net.hypixel.nerdbot.bot.config.RoleConfig;
@@ -43,6 +44,8 @@ public class ConfigGenerator {
         botConfig.setMessageLimit(100);
         botConfig.setMojangUsernameCacheTTL(12);
         botConfig.setVoiceThreshold(60);
+        botConfig.setVoiceSessionJournalFile("./voice-sessions.json");
+        botConfig.setActivityJournalDirectory("./activity-journal");
         botConfig.setInterval(43_200_000);
         botConfig.setActivityType(Activity.ActivityType.WATCHING);
         botConfig.setActivity("with an example message!");
@@ -86,6 +89,13 @@ public class ConfigGenerator {
         metricsConfig.setPort(1234);
         botConfig.setMetricsConfig(metricsConfig);
 
+        DatabaseConfig databaseConfig = new DatabaseConfig();
+        databaseConfig.setLazyUserLoading(false);
+        databaseConfig.setWarmUserActivityDays(30);
+        databaseConfig.setChangeStreamsEnabled(false);
+        databaseConfig.setResumeTokenDirectory("./change-streams");
+        botConfig.setDatabaseConfig(databaseConfig);
+
         ModMailConfig modMailConfig = new ModMailConfig();
         modMailConfig.setChannelId(EXAMPLE_ID);
         modMailConfig.setRoleFormat(ModMailConfig.RoleFormat.BELOW);
@@ -119,6 +129,7 @@ public class ConfigGenerator {
         suggestionConfig.setAutoPinFirstMessage(true);
         suggestionConfig.setAutoArchiveThreshold(168);
         suggestionConfig.setAutoLockThreshold(168);
+        suggestionConfig.setCacheSnapshotFile("./suggestion-cache.json");
         botConfig.setSuggestionConfig(suggestionConfig);
 
         AlphaProjectConfig alphaProjectConfig = new AlphaProjectConfig();
@@ -93,4 +93,12 @@ public class SuggestionConfig {
      * Set to -1 to disable
      */
     private int autoLockThreshold = -1;
+
+    /**
+     * The file the suggestion cache is saved to, so suggestions are available right after a restart, or empty to not
+     * save the cache
+     * <br><br>
+     * Default is "./suggestion-cache.json"
+     */
+    private String cacheSnapshotFile = "./suggestion-cache.json";
 }
@@ -7,25 +7,34 @@ import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.MessageReaction;
+import net.dv8tion.jda.api.entities.channel.concrete.ForumChannel;
 import net.dv8tion.jda.api.entities.channel.concrete.ThreadChannel;
 import net.dv8tion.jda.api.entities.channel.forums.ForumTag;
 import net.dv8tion.jda.api.entities.emoji.Emoji;
-import net.dv8tion.jda.api.managers.channel.concrete.ThreadChannelManager;
+import net.dv8tion.jda.api.utils.TimeUtil;
 import net.hypixel.nerdbot.NerdBotApp;
 import net.hypixel.nerdbot.bot.config.BotConfig;
 import net.hypixel.nerdbot.util.Util;
+import org.apache.commons.lang.StringUtils;
+import org.jetbrains.annotations.Nullable;
 
 import java.time.OffsetDateTime;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
 
 @Getter
 @Log4j2
 public class Suggestion {
 
+    /**
+     * The maximum length of the first message kept with a suggestion
+     */
+    public static final int FIRST_MESSAGE_SUMMARY_LENGTH = 500;
+
     private final String threadId;
+    private final long threadIdLong;
     private final String parentId;
     private final String threadName;
     private final String ownerId;
@@ -33,23 +42,32 @@ public class Suggestion {
     private final String guildId;
     private final OffsetDateTime timeCreated;
     private final String jumpUrl;
-    private final int agrees;
-    private final int disagrees;
-    private final int neutrals;
+    // Kept current from reaction events by the suggestion cache
+    private volatile int agrees;
+    private volatile int disagrees;
+    private volatile int neutrals;
     private final boolean greenlit;
     private final boolean deleted;
-    private final long lastUpdated = System.currentTimeMillis();
-    private final long lastBump = System.currentTimeMillis();
+    private final long lastUpdated;
     private final ChannelType channelType;
-    private boolean expired;
-
-    public Suggestion(ThreadChannel thread) {
-        this(thread, null);
-    }
+    private final List<String> appliedTagIds;
+    private final long lastMessageIdLong;
+    @Nullable
+    private final String firstMessageSummary;
+    private volatile long lastBump;
+    private volatile boolean expired;
 
-    public Suggestion(ThreadChannel thread, ChannelType channelType) {
+    /**
+     * Create a suggestion from a thread and its first message. Only reads data JDA already has, so this never blocks.
+     *
+     * @param thread       The thread of the suggestion
+     * @param channelType  The type of the forum the thread is in, or null to look it up
+     * @param firstMessage The first message in the thread, or null if the thread has no messages
+     */
+    public Suggestion(ThreadChannel thread, @Nullable ChannelType channelType, @Nullable Message firstMessage) {
         BotConfig botConfig = NerdBotApp.getBot().getConfig();
         this.threadId = thread.getId();
+        this.threadIdLong = thread.getIdLong();
         this.parentId = thread.getParentChannel().asForumChannel().getId();
         this.threadName = thread.getName();
         this.ownerId = thread.getOwnerId();
@@ -57,57 +75,86 @@ public class Suggestion {
         this.guildId = thread.getGuild().getId();
         this.timeCreated = thread.getTimeCreated();
         this.jumpUrl = String.format("https://discord.com/channels/%s/%s", this.getGuildId(), this.getThreadId());
-        this.greenlit = channelType == ChannelType.NORMAL && Util.hasTagByName(thread, botConfig.getSuggestionConfig().getGreenlitTag());
         this.channelType = channelType == null ? Util.getSuggestionType(thread) : channelType;
+        this.greenlit = this.channelType == ChannelType.NORMAL && Util.hasTagByName(thread, botConfig.getSuggestionConfig().getGreenlitTag());
+        this.appliedTagIds = thread.getAppliedTags().stream().map(ForumTag::getId).toList();
+        this.lastMessageIdLong = thread.getLatestMessageIdLong();
+        this.lastUpdated = System.currentTimeMillis();
         this.expired = false;
-
-        // Activity
-        Message latestMessage = thread.getHistory().getMessageById(thread.getLatestMessageId());
-        if (latestMessage != null) {
-            long createdAt = latestMessage.getTimeCreated().toInstant().toEpochMilli();
-            long currentTime = System.currentTimeMillis();
-            long hoursAgo = TimeUnit.MILLISECONDS.toHours(currentTime - createdAt);
-            ThreadChannelManager threadManager = thread.getManager();
-            boolean changed = false;
-            long autoArchiveThreshold = channelType == ChannelType.NORMAL ? botConfig.getSuggestionConfig().getAutoArchiveThreshold() : botConfig.getAlphaProjectConfig().getAutoArchiveThreshold();
-            long autoLockThreshold = channelType == ChannelType.NORMAL ? botConfig.getSuggestionConfig().getAutoLockThreshold() : botConfig.getAlphaProjectConfig().getAutoLockThreshold();
-
-            if (hoursAgo >= autoArchiveThreshold) {
-                log.debug("Auto-archiving suggestion '{}' (ID: {}) due to inactivity. (Hours: {}, Auto Archive Threshold: {})", thread.getName(), thread.getId(), hoursAgo, autoArchiveThreshold);
-                threadManager = threadManager.setArchived(true);
-                changed = true;
-            }
-
-            if (hoursAgo >= autoLockThreshold) {
-                log.debug("Auto-locking suggestion '{}' (ID: {}) due to inactivity. (Hours: {}, Auto Archive Threshold: {})", thread.getName(), thread.getId(), hoursAgo, autoLockThreshold);
-                threadManager = threadManager.setLocked(true);
-                changed = true;
-            }
-
-            if (changed) {
-                threadManager.queue();
-            }
-        }
+        // Message IDs contain their creation time, so the latest activity is known without fetching the message
+        this.lastBump = thread.getLatestMessageIdLong() == 0 ? this.timeCreated.toInstant().toEpochMilli() : TimeUtil.getTimeCreated(thread.getLatestMessageIdLong()).toInstant().toEpochMilli();
 
         // Message & Reactions
-        Optional<Message> firstMessage = this.getFirstMessage();
-        if (firstMessage.isEmpty()) {
+        if (firstMessage == null) {
             this.deleted = true;
             this.agrees = 0;
             this.disagrees = 0;
             this.neutrals = 0;
+            this.firstMessageSummary = null;
         } else {
-            Message message = firstMessage.get();
-            this.deleted = message.getIdLong() != thread.getIdLong();
-            this.agrees = getReactionCount(message, NerdBotApp.getBot().getConfig().getEmojiConfig().getAgreeEmojiId());
-            this.disagrees = getReactionCount(message, NerdBotApp.getBot().getConfig().getEmojiConfig().getDisagreeEmojiId());
-            this.neutrals = getReactionCount(message, NerdBotApp.getBot().getConfig().getEmojiConfig().getNeutralEmojiId());
+            this.deleted = firstMessage.getIdLong() != thread.getIdLong();
+            this.agrees = getReactionCount(firstMessage, botConfig.getEmojiConfig().getAgreeEmojiId());
+            this.disagrees = getReactionCount(firstMessage, botConfig.getEmojiConfig().getDisagreeEmojiId());
+            this.neutrals = getReactionCount(firstMessage, botConfig.getEmojiConfig().getNeutralEmojiId());
+            this.firstMessageSummary = StringUtils.abbreviate(firstMessage.getContentRaw(), FIRST_MESSAGE_SUMMARY_LENGTH);
         }
     }
 
+    /**
+     * Restore a suggestion from a snapshot saved by {@link #toSnapshot()}
+     */
+    public Suggestion(Snapshot snapshot) {
+        this.threadId = snapshot.threadId();
+        this.threadIdLong = Long.parseLong(snapshot.threadId());
+        this.parentId = snapshot.parentId();
+        this.threadName = snapshot.threadName();
+        this.ownerId = snapshot.ownerId();
+        this.ownerIdLong = Long.parseLong(snapshot.ownerId());
+        this.guildId = snapshot.guildId();
+        this.timeCreated = TimeUtil.getTimeCreated(this.threadIdLong);
+        this.jumpUrl = String.format("https://discord.com/channels/%s/%s", this.getGuildId(), this.getThreadId());
+        this.agrees = snapshot.agrees();
+        this.disagrees = snapshot.disagrees();
+        this.neutrals = snapshot.neutrals();
+        this.greenlit = snapshot.greenlit();
+        this.deleted = snapshot.deleted();
+        this.lastUpdated = snapshot.lastUpdated();
+        this.channelType = snapshot.channelType() == null ? ChannelType.UNKNOWN : snapshot.channelType();
+        this.appliedTagIds = snapshot.appliedTagIds() == null ? List.of() : List.copyOf(snapshot.appliedTagIds());
+        this.lastMessageIdLong = snapshot.lastMessageId() == null ? 0L : Long.parseLong(snapshot.lastMessageId());
+        this.firstMessageSummary = snapshot.firstMessageSummary();
+        this.lastBump = snapshot.lastBump();
+        this.expired = false;
+    }
+
+    public Snapshot toSnapshot() {
+        return new Snapshot(threadId, parentId, threadName, ownerId, guildId, channelType, appliedTagIds, Long.toString(lastMessageIdLong),
+            agrees, disagrees, neutrals, greenlit, deleted, firstMessageSummary, lastBump, lastUpdated);
+    }
+
+    /**
+     * @return Whether the thread has not changed since this suggestion was built, apart from its reactions
+     */
+    public boolean isCurrent(ThreadChannel thread) {
+        return this.lastMessageIdLong == thread.getLatestMessageIdLong()
+            && this.threadName.equals(thread.getName())
+            && this.appliedTagIds.equals(thread.getAppliedTags().stream().map(ForumTag::getId).toList());
+    }
+
+    /**
+     * Looked up through the forum, as archived threads are not cached by JDA
+     */
     public List<ForumTag> getAppliedTags() {
-        ThreadChannel threadChannel = NerdBotApp.getBot().getJDA().getThreadChannelById(this.getThreadId());
-        return threadChannel == null ? List.of() : threadChannel.getAppliedTags();
+        ForumChannel forumChannel = NerdBotApp.getBot().getJDA().getForumChannelById(this.getParentId());
+
+        if (forumChannel == null) {
+            return List.of();
+        }
+
+        return this.appliedTagIds.stream()
+            .map(forumChannel::getAvailableTagById)
+            .filter(Objects::nonNull)
+            .toList();
     }
 
     public Optional<Message> getFirstMessage() {
@@ -124,6 +171,10 @@ public class Suggestion {
             .orElse(0);
     }
 
+    public int getTotalVotes() {
+        return this.getAgrees() + this.getDisagrees();
+    }
+
     public double getRatio() {
         if (this.getAgrees() == 0 && this.getDisagrees() == 0) {
             return 0;
@@ -136,13 +187,67 @@ public class Suggestion {
         return !this.isDeleted();
     }
 
-    void setExpired() {
-        this.expired = true;
+    void setExpired(boolean expired) {
+        this.expired = expired;
+    }
+
+    public int getVotes(Vote vote) {
+        return switch (vote) {
+            case AGREE -> this.agrees;
+            case DISAGREE -> this.disagrees;
+            case NEUTRAL -> this.neutrals;
+        };
+    }
+
+    /**
+     * Change a vote count. Only called by {@link SuggestionCache}, which keeps its index sorted while counts change.
+     */
+    synchronized void addVotes(Vote vote, int amount) {
+        switch (vote) {
+            case AGREE -> this.agrees = Math.max(0, this.agrees + amount);
+            case DISAGREE -> this.disagrees = Math.max(0, this.disagrees + amount);
+            case NEUTRAL -> this.neutrals = Math.max(0, this.neutrals + amount);
+        }
+    }
+
+    /**
+     * Reset vote counts to 0. Only called by {@link SuggestionCache}, which keeps its index sorted while counts change.
+     *
+     * @param vote The vote to reset, or null to reset every vote
+     */
+    synchronized void clearVotes(@Nullable Vote vote) {
+        if (vote == null || vote == Vote.AGREE) {
+            this.agrees = 0;
+        }
+
+        if (vote == null || vote == Vote.DISAGREE) {
+            this.disagrees = 0;
+        }
+
+        if (vote == null || vote == Vote.NEUTRAL) {
+            this.neutrals = 0;
+        }
+    }
+
+    void bump(long time) {
+        this.lastBump = Math.max(this.lastBump, time);
     }
 
     public boolean canSee(Member member) {
-        ThreadChannel threadChannel = NerdBotApp.getBot().getJDA().getThreadChannelById(this.getThreadId());
-        return threadChannel != null && member.hasPermission(threadChannel, Permission.VIEW_CHANNEL);
+        // Public threads have the permissions of their forum, which is cached by JDA unlike archived threads
+        ForumChannel forumChannel = NerdBotApp.getBot().getJDA().getForumChannelById(this.getParentId());
+        return forumChannel != null && member.hasPermission(forumChannel, Permission.VIEW_CHANNEL);
+    }
+
+    public record Snapshot(String threadId, String parentId, String threadName, String ownerId, String guildId, ChannelType channelType,
+                           List<String> appliedTagIds, String lastMessageId, int agrees, int disagrees, int neutrals, boolean greenlit,
+                           boolean deleted, @Nullable String firstMessageSummary, long lastBump, long lastUpdated) {
+    }
+
+    public enum Vote {
+        AGREE,
+        DISAGREE,
+        NEUTRAL
     }
 
     @Getter
@@ -0,0 +1,106 @@
+package net.hypixel.nerdbot.cache.suggestion;
+
+import lombok.extern.log4j.Log4j2;
+import net.dv8tion.jda.api.entities.channel.concrete.ThreadChannel;
+import net.dv8tion.jda.api.managers.channel.concrete.ThreadChannelManager;
+import net.dv8tion.jda.api.utils.TimeUtil;
+import net.hypixel.nerdbot.NerdBotApp;
+import net.hypixel.nerdbot.bot.config.BotConfig;
+
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Archives and locks inactive suggestions one at a time on its own thread, so loading suggestions never waits on
+ * channel edits and a scan that finds many inactive suggestions does not send all of the edits at once.
+ */
+@Log4j2
+public class SuggestionActionQueue {
+
+    /**
+     * The delay between each channel edit in milliseconds
+     */
+    public static final long ACTION_DELAY_MILLIS = Long.getLong("suggestion.actions.delayMillis", 1_000L);
+
+    private final BlockingQueue<Action> actions = new LinkedBlockingQueue<>();
+    private final Set<String> queuedThreadIds = ConcurrentHashMap.newKeySet();
+
+    public SuggestionActionQueue() {
+        Thread thread = new Thread(this::run, "suggestion-actions");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queue archiving or locking a suggestion if it has been inactive for longer than the configured thresholds
+     */
+    public void checkInactivity(ThreadChannel thread, Suggestion suggestion) {
+        // Archived threads have to be unarchived before anything else can be changed
+        if (thread.isArchived() || suggestion.getChannelType() == Suggestion.ChannelType.UNKNOWN) {
+            return;
+        }
+
+        BotConfig botConfig = NerdBotApp.getBot().getConfig();
+        boolean normal = suggestion.getChannelType() == Suggestion.ChannelType.NORMAL;
+        long autoArchiveThreshold = normal ? botConfig.getSuggestionConfig().getAutoArchiveThreshold() : botConfig.getAlphaProjectConfig().getAutoArchiveThreshold();
+        long autoLockThreshold = normal ? botConfig.getSuggestionConfig().getAutoLockThreshold() : botConfig.getAlphaProjectConfig().getAutoLockThreshold();
+        long hoursAgo = TimeUnit.MILLISECONDS.toHours(System.currentTimeMillis() - suggestion.getLastBump());
+
+        boolean archive = autoArchiveThreshold > 0 && hoursAgo >= autoArchiveThreshold;
+        boolean lock = autoLockThreshold > 0 && hoursAgo >= autoLockThreshold && !thread.isLocked();
+
+        if ((archive || lock) && queuedThreadIds.add(thread.getId())) {
+            actions.add(new Action(thread, archive, lock, hoursAgo, suggestion.getLastBump()));
+        }
+    }
+
+    public int size() {
+        return actions.size();
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Action action = actions.take();
+                queuedThreadIds.remove(action.thread().getId());
+                apply(action);
+                Thread.sleep(ACTION_DELAY_MILLIS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void apply(Action action) {
+        ThreadChannel thread = action.thread();
+
+        // Someone posted in the thread while the action was queued
+        if (thread.getLatestMessageIdLong() != 0 && TimeUtil.getTimeCreated(thread.getLatestMessageIdLong()).toInstant().toEpochMilli() > action.lastBump()) {
+            return;
+        }
+
+        ThreadChannelManager threadManager = thread.getManager();
+
+        if (action.lock()) {
+            log.debug("Auto-locking suggestion '{}' (ID: {}) due to inactivity. (Hours: {})", thread.getName(), thread.getId(), action.hoursAgo());
+            threadManager = threadManager.setLocked(true);
+        }
+
+        if (action.archive()) {
+            log.debug("Auto-archiving suggestion '{}' (ID: {}) due to inactivity. (Hours: {})", thread.getName(), thread.getId(), action.hoursAgo());
+            threadManager = threadManager.setArchived(true);
+        }
+
+        try {
+            threadManager.complete();
+        } catch (RuntimeException exception) {
+            log.error("Failed to archive or lock suggestion '" + thread.getName() + "' (ID: " + thread.getId() + ")", exception);
+        }
+    }
+
+    private record Action(ThreadChannel thread, boolean archive, boolean lock, long hoursAgo, long lastBump) {
+    }
+}
@@ -1,85 +1,197 @@
 package net.hypixel.nerdbot.cache.suggestion;
 
+import com.google.gson.Gson;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 import net.dv8tion.jda.api.entities.channel.concrete.ForumChannel;
 import net.dv8tion.jda.api.entities.channel.concrete.ThreadChannel;
 import net.hypixel.nerdbot.NerdBotApp;
+import net.hypixel.nerdbot.bot.config.EmojiConfig;
 import net.hypixel.nerdbot.bot.config.channel.AlphaProjectConfig;
 import net.hypixel.nerdbot.bot.config.suggestion.SuggestionConfig;
 import net.hypixel.nerdbot.cache.ChannelCache;
+import net.hypixel.nerdbot.metrics.PrometheusMetrics;
 import net.hypixel.nerdbot.util.Util;
+import org.jetbrains.annotations.Nullable;
 
-import java.time.Duration;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
+/**
+ * Cache of every suggestion in the suggestion forums, kept current from thread, message and reaction events.
+ * <br><br>
+ * Thread and message events schedule a refresh of the affected suggestion, so a burst of edits to one post is handled
+ * with a single rebuild after {@link #REFRESH_DELAY_SECONDS} seconds. Every {@link #RECONCILE_INTERVAL_MINUTES} minutes
+ * all forums are scanned again to pick up anything that was missed, such as events sent while the bot was offline.
+ * <br><br>
+ * Suggestions are built by a {@link SuggestionLoader}, and inactive suggestions are archived and locked by a
+ * {@link SuggestionActionQueue}, so neither the scan nor the event threads wait on single requests.
+ * <br><br>
+ * The cache is saved to a snapshot file every {@link #SNAPSHOT_INTERVAL_SECONDS} seconds while it changes. On startup
+ * the snapshot is loaded before anything else, and the first scan only rebuilds suggestions whose thread got new
+ * messages, a new name or new tags since it was saved.
+ * <br><br>
+ * Vote counts are changed directly by reaction events on the first message of each suggestion. Every
+ * {@link #VOTE_VALIDATION_INTERVAL_MINUTES} minutes the suggestions that received votes are loaded again, replacing
+ * the live counts with the counts Discord has in case an event was missed.
+ */
 @Log4j2
-public class SuggestionCache extends TimerTask {
+public class SuggestionCache {
 
-    private final Map<String, Suggestion> cache = new HashMap<>();
+    /**
+     * The interval between each full scan of the suggestion forums in minutes
+     */
+    public static final long RECONCILE_INTERVAL_MINUTES = Long.getLong("suggestion.reconcile.intervalMinutes", 360L);
+    /**
+     * How long changes to a suggestion are collected before it is rebuilt in seconds
+     */
+    public static final long REFRESH_DELAY_SECONDS = Long.getLong("suggestion.refresh.delaySeconds", 5L);
+    /**
+     * The minimum interval between each save of the snapshot in seconds
+     */
+    public static final long SNAPSHOT_INTERVAL_SECONDS = Long.getLong("suggestion.snapshot.intervalSeconds", 60L);
+    /**
+     * The interval between each check of the live vote counts against Discord in minutes
+     */
+    public static final long VOTE_VALIDATION_INTERVAL_MINUTES = Long.getLong("suggestion.votes.validationIntervalMinutes", 30L);
+    // Not pretty printed, the snapshot can hold thousands of suggestions
+    private static final Gson SNAPSHOT_GSON = new Gson();
+
+    private final Map<String, Suggestion> cache = new ConcurrentHashMap<>();
+    // Latest known thread of each suggestion waiting for a refresh
+    private final Map<String, ThreadChannel> pendingRefreshes = new ConcurrentHashMap<>();
+    @Getter
+    private final SuggestionIndex index = new SuggestionIndex();
+    @Getter
+    private final SuggestionLoader loader = new SuggestionLoader();
     @Getter
-    private final Timer timer = new Timer();
+    private final SuggestionActionQueue actionQueue = new SuggestionActionQueue();
+    // One thread for the reconciliation scan, so refreshes are not held up while it runs
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "suggestion-cache");
+        thread.setDaemon(true);
+        return thread;
+    });
     @Getter
-    private boolean initialized = false;
+    private volatile boolean initialized = false;
     @Getter
-    private boolean updating = false;
+    private volatile boolean updating = false;
+    private final Object snapshotLock = new Object();
+    private volatile boolean snapshotDirty = false;
+    // Suggestions loaded from the snapshot are kept by the next scan unless their thread changed
+    private volatile boolean restoredFromSnapshot = false;
+    // Suggestions whose vote counts changed from events since they were last validated
+    private final Set<String> votedThreadIds = ConcurrentHashMap.newKeySet();
+    private volatile VoteEmojis voteEmojis;
 
     public SuggestionCache() {
-        this.timer.scheduleAtFixedRate(this, 0, Duration.ofMinutes(60).toMillis());
+        this.loadSnapshot();
+        this.scheduler.scheduleWithFixedDelay(this::reconcile, 0, RECONCILE_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        this.scheduler.scheduleWithFixedDelay(() -> {
+            if (this.snapshotDirty) {
+                this.saveSnapshot();
+            }
+        }, SNAPSHOT_INTERVAL_SECONDS, SNAPSHOT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        this.scheduler.scheduleWithFixedDelay(this::validateVotes, VOTE_VALIDATION_INTERVAL_MINUTES, VOTE_VALIDATION_INTERVAL_MINUTES, TimeUnit.MINUTES);
     }
 
-    @Override
-    public void run() {
+    /**
+     * Stop updating the cache and save the snapshot one last time
+     */
+    public void stop() {
+        this.scheduler.shutdownNow();
+        this.saveSnapshot();
+    }
+
+    /**
+     * Scan every suggestion forum, rebuilding every suggestion and removing the ones whose thread no longer exists
+     */
+    public void reconcile() {
         try {
-            log.info("Started suggestion cache update.");
+            log.info("Started suggestion cache reconciliation.");
 
             this.updating = true;
-            this.cache.forEach((key, suggestion) -> suggestion.setExpired());
+            boolean incremental = this.restoredFromSnapshot;
+            this.restoredFromSnapshot = false;
+            List<Suggestion> previousSuggestions = new ArrayList<>(cache.values());
+            previousSuggestions.forEach(suggestion -> suggestion.setExpired(true));
 
             SuggestionConfig suggestionConfig = NerdBotApp.getBot().getConfig().getSuggestionConfig();
             AlphaProjectConfig alphaProjectConfig = NerdBotApp.getBot().getConfig().getAlphaProjectConfig();
 
+            List<CompletableFuture<?>> loads = new ArrayList<>();
+            // Reactions added while the bot was offline don't change the thread, so suggestions kept from the snapshot
+            // still need their votes checked
+            List<ThreadChannel> keptThreads = new ArrayList<>();
+
             // Suggestions
             Optional<ForumChannel> suggestionChannel = ChannelCache.getForumChannelById(suggestionConfig.getForumChannelId());
-            suggestionChannel.ifPresent(forumChannel -> this.loadSuggestions(forumChannel, Suggestion.ChannelType.NORMAL));
+            suggestionChannel.ifPresent(forumChannel -> this.loadSuggestions(forumChannel, Suggestion.ChannelType.NORMAL, incremental, loads, keptThreads));
 
             // Alpha Suggestions
             Util.safeArrayStream(alphaProjectConfig.getAlphaForumIds())
                 .map(ChannelCache::getForumChannelById)
                 .flatMap(Optional::stream)
                 .filter(Objects::nonNull)
-                .forEach(forumChannel -> this.loadSuggestions(forumChannel, Suggestion.ChannelType.ALPHA));
+                .forEach(forumChannel -> this.loadSuggestions(forumChannel, Suggestion.ChannelType.ALPHA, incremental, loads, keptThreads));
 
             // Project Suggestions
             Util.safeArrayStream(alphaProjectConfig.getProjectForumIds())
                 .map(ChannelCache::getForumChannelById)
                 .flatMap(Optional::stream)
                 .filter(Objects::nonNull)
-                .forEach(forumChannel -> this.loadSuggestions(forumChannel, Suggestion.ChannelType.PROJECT));
+                .forEach(forumChannel -> this.loadSuggestions(forumChannel, Suggestion.ChannelType.PROJECT, incremental, loads, keptThreads));
 
+            // Failed loads are logged by themselves and leave the previous suggestion in place
+            CompletableFuture.allOf(loads.toArray(CompletableFuture[]::new)).exceptionally(throwable -> null).join();
+
+            // Suggestions replaced by an event during the scan are no longer the cached instance, so only the ones
+            // the scan did not find are removed
             log.info("Removing expired suggestions.");
-            new ArrayList<>(cache.values())
-                .stream()
+            previousSuggestions.stream()
                 .filter(Suggestion::isExpired)
-                .forEach(suggestion -> this.removeSuggestion(suggestion.getThreadName(), suggestion.getThreadId()));
+                .filter(suggestion -> cache.remove(suggestion.getThreadId(), suggestion))
+                .forEach(suggestion -> {
+                    this.index.remove(suggestion.getThreadId());
+                    this.snapshotDirty = true;
+                    log.debug("Removed suggestion '" + suggestion.getThreadName() + "' (ID: " + suggestion.getThreadId() + ") from the suggestion cache.");
+                });
 
             log.info("Finished caching suggestions.");
             this.initialized = true;
-            this.updating = false;
+            this.saveSnapshot();
+
+            if (!keptThreads.isEmpty()) {
+                log.info("Validating votes of " + keptThreads.size() + " suggestions kept from the snapshot.");
+                this.scheduler.execute(() -> keptThreads.forEach(this::validateVotes));
+            }
         } catch (Exception exception) {
             log.error("Failed to update suggestion cache!", exception);
+        } finally {
+            this.updating = false;
         }
     }
 
-    private void loadSuggestions(ForumChannel forumChannel, Suggestion.ChannelType channelType) {
+    private void loadSuggestions(ForumChannel forumChannel, Suggestion.ChannelType channelType, boolean incremental, List<CompletableFuture<?>> loads, List<ThreadChannel> keptThreads) {
         Stream<ThreadChannel> unarchivedPosts = forumChannel.getThreadChannels().stream().sorted(
             (o1, o2) -> Long.compare(o2.getTimeCreated().toEpochSecond(), o1.getTimeCreated().toEpochSecond())
         );
@@ -87,29 +199,53 @@ public class SuggestionCache extends TimerTask {
         Stream.concat(unarchivedPosts, archivedPosts)
             .distinct()
             .forEach(threadChannel -> {
-                Suggestion suggestion = new Suggestion(threadChannel, channelType);
-                this.cache.put(threadChannel.getId(), suggestion);
-                log.debug("Added existing {} suggestion: '{}' (ID: {}) to the suggestion cache.", channelType.getName().toLowerCase(), threadChannel.getName(), threadChannel.getId());
+                Suggestion cached = this.cache.get(threadChannel.getId());
+
+                if (cached != null) {
+                    // The thread still exists, so the suggestion is kept even if loading it again fails
+                    cached.setExpired(false);
+
+                    if (incremental && cached.isCurrent(threadChannel)) {
+                        this.actionQueue.checkInactivity(threadChannel, cached);
+                        keptThreads.add(threadChannel);
+                        return;
+                    }
+                }
+
+                loads.add(this.load(threadChannel, channelType, false).thenAccept(suggestion ->
+                    log.debug("Added existing {} suggestion: '{}' (ID: {}) to the suggestion cache.", channelType.getName().toLowerCase(), threadChannel.getName(), threadChannel.getId())
+                ));
             });
     }
 
-    public void addSuggestion(ThreadChannel thread) {
-        this.cache.put(thread.getId(), new Suggestion(thread));
-        log.debug("Added new suggestion '" + thread.getName() + "' (ID: " + thread.getId() + ") to the suggestion cache.");
+    private CompletableFuture<Suggestion> load(ThreadChannel thread, @Nullable Suggestion.ChannelType channelType, boolean priority) {
+        return this.loader.load(thread, channelType, priority)
+            .whenComplete((suggestion, throwable) -> {
+                if (throwable != null) {
+                    log.error("Failed to load suggestion '" + thread.getName() + "' (ID: " + thread.getId() + ")", throwable);
+                    return;
+                }
+
+                this.store(thread, suggestion);
+            });
     }
 
-    public Suggestion getSuggestion(String id) {
-        return this.cache.get(id);
+    private void store(ThreadChannel thread, Suggestion suggestion) {
+        this.cache.put(thread.getId(), suggestion);
+        this.index.put(suggestion);
+        this.snapshotDirty = true;
+        this.actionQueue.checkInactivity(thread, suggestion);
     }
 
-    public List<Suggestion> getSuggestions() {
-        return this.cache.values()
-            .stream()
-            .sorted((o1, o2) -> Long.compare( // Sort by most recent
-                o2.getTimeCreated().toInstant().toEpochMilli(),
-                o1.getTimeCreated().toInstant().toEpochMilli()
-            ))
-            .toList();
+    public CompletableFuture<Suggestion> addSuggestion(ThreadChannel thread) {
+        return this.load(thread, null, true).thenApply(suggestion -> {
+            log.debug("Added new suggestion '" + thread.getName() + "' (ID: " + thread.getId() + ") to the suggestion cache.");
+            return suggestion;
+        });
+    }
+
+    public Suggestion getSuggestion(String id) {
+        return this.cache.get(id);
     }
 
     public void removeSuggestion(ThreadChannel threadChannel) {
@@ -118,11 +254,231 @@ public class SuggestionCache extends TimerTask {
 
     public void removeSuggestion(String threadName, String threadId) {
         this.cache.remove(threadId);
+        this.index.remove(threadId);
+        this.pendingRefreshes.remove(threadId);
+        this.snapshotDirty = true;
         log.debug("Removed suggestion '" + threadName + "' (ID: " + threadId + ") from the suggestion cache.");
     }
 
-    public void updateSuggestion(ThreadChannel thread) {
-        this.cache.put(thread.getId(), new Suggestion(thread));
-        log.debug("Updated existing suggestion: '" + thread.getName() + "' (ID: " + thread.getId() + ") in the suggestion cache.");
+    public CompletableFuture<Suggestion> updateSuggestion(ThreadChannel thread) {
+        return this.load(thread, null, true).thenApply(suggestion -> {
+            log.debug("Updated existing suggestion: '" + thread.getName() + "' (ID: " + thread.getId() + ") in the suggestion cache.");
+            return suggestion;
+        });
+    }
+
+    /**
+     * Rebuild a suggestion after {@link #REFRESH_DELAY_SECONDS} seconds. Further refreshes requested for the same
+     * thread in the meantime are handled by the same rebuild.
+     */
+    public void refreshSuggestion(ThreadChannel thread) {
+        if (this.pendingRefreshes.put(thread.getId(), thread) != null) {
+            return;
+        }
+
+        this.scheduler.schedule(() -> {
+            ThreadChannel latestThread = this.pendingRefreshes.remove(thread.getId());
+
+            if (latestThread == null) {
+                return; // Deleted in the meantime
+            }
+
+            this.updateSuggestion(latestThread);
+        }, REFRESH_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Record a new message in a suggestion, without rebuilding it
+     */
+    public void bumpSuggestion(String threadId, long time) {
+        Suggestion suggestion = this.cache.get(threadId);
+
+        if (suggestion != null) {
+            suggestion.bump(time);
+            this.snapshotDirty = true;
+        }
+    }
+
+    /**
+     * Count a reaction added to or removed from the first message of a suggestion
+     *
+     * @param amount 1 for an added reaction, -1 for a removed reaction
+     */
+    public void addVote(ThreadChannel thread, String emojiId, int amount) {
+        Suggestion.Vote vote = this.getVotesByEmojiId().get(emojiId);
+
+        if (vote != null) {
+            this.changeVotes(thread, suggestion -> suggestion.addVotes(vote, amount));
+        }
+    }
+
+    /**
+     * Reset the votes of a suggestion after its reactions were removed by a moderator
+     *
+     * @param emojiId The ID of the removed emoji, or null if every reaction was removed
+     */
+    public void clearVotes(ThreadChannel thread, @Nullable String emojiId) {
+        if (emojiId == null) {
+            this.changeVotes(thread, suggestion -> suggestion.clearVotes(null));
+            return;
+        }
+
+        Suggestion.Vote vote = this.getVotesByEmojiId().get(emojiId);
+
+        if (vote != null) {
+            this.changeVotes(thread, suggestion -> suggestion.clearVotes(vote));
+        }
+    }
+
+    private void changeVotes(ThreadChannel thread, Consumer<Suggestion> change) {
+        Suggestion suggestion = this.cache.get(thread.getId());
+
+        // Not loaded yet, so the counts are taken from Discord instead
+        if (suggestion == null) {
+            this.refreshSuggestion(thread);
+            return;
+        }
+
+        this.index.changeVotes(suggestion, change);
+        this.votedThreadIds.add(thread.getId());
+        this.snapshotDirty = true;
+    }
+
+    private Map<String, Suggestion.Vote> getVotesByEmojiId() {
+        EmojiConfig emojiConfig = NerdBotApp.getBot().getConfig().getEmojiConfig();
+        VoteEmojis current = this.voteEmojis;
+
+        // Built again whenever the config is reloaded
+        if (current == null || current.emojiConfig() != emojiConfig) {
+            Map<String, Suggestion.Vote> votesByEmojiId = new HashMap<>();
+            putIfNotNull(votesByEmojiId, emojiConfig.getAgreeEmojiId(), Suggestion.Vote.AGREE);
+            putIfNotNull(votesByEmojiId, emojiConfig.getDisagreeEmojiId(), Suggestion.Vote.DISAGREE);
+            putIfNotNull(votesByEmojiId, emojiConfig.getNeutralEmojiId(), Suggestion.Vote.NEUTRAL);
+            current = new VoteEmojis(emojiConfig, votesByEmojiId);
+            this.voteEmojis = current;
+        }
+
+        return current.votesByEmojiId();
+    }
+
+    private static void putIfNotNull(Map<String, Suggestion.Vote> votesByEmojiId, @Nullable String emojiId, Suggestion.Vote vote) {
+        if (emojiId != null && !emojiId.isBlank()) {
+            votesByEmojiId.put(emojiId, vote);
+        }
+    }
+
+    /**
+     * Load the suggestions that received votes since the last validation again, counting the ones whose live counts
+     * did not match Discord
+     */
+    private void validateVotes() {
+        List<String> threadIds = new ArrayList<>(this.votedThreadIds);
+        this.votedThreadIds.removeAll(threadIds);
+
+        for (String threadId : threadIds) {
+            ThreadChannel thread = NerdBotApp.getBot().getJDA().getThreadChannelById(threadId);
+
+            if (thread != null) {
+                this.validateVotes(thread);
+            }
+        }
+    }
+
+    /**
+     * Load a cached suggestion again, counting it if its live vote counts did not match Discord
+     */
+    private void validateVotes(ThreadChannel thread) {
+        String threadId = thread.getId();
+        Suggestion cached = this.cache.get(threadId);
+
+        if (cached == null) {
+            return;
+        }
+
+        this.loader.load(thread, cached.getChannelType(), false).whenComplete((suggestion, throwable) -> {
+            if (throwable != null) {
+                log.error("Failed to validate votes of suggestion '" + thread.getName() + "' (ID: " + threadId + ")", throwable);
+                return;
+            }
+
+            Suggestion live = this.cache.get(threadId);
+            if (live != null && Arrays.stream(Suggestion.Vote.values()).anyMatch(vote -> live.getVotes(vote) != suggestion.getVotes(vote))) {
+                PrometheusMetrics.SUGGESTION_VOTE_CORRECTIONS.inc();
+                log.debug("Corrected votes of suggestion '" + thread.getName() + "' (ID: " + threadId + ") from " + live.getAgrees() + "/" + live.getDisagrees() + "/" + live.getNeutrals()
+                    + " to " + suggestion.getAgrees() + "/" + suggestion.getDisagrees() + "/" + suggestion.getNeutrals());
+            }
+
+            this.store(thread, suggestion);
+        });
+    }
+
+    private void loadSnapshot() {
+        Path snapshotFile = getSnapshotFile();
+
+        if (snapshotFile == null || !Files.exists(snapshotFile)) {
+            return;
+        }
+
+        try {
+            SnapshotFile snapshot = SNAPSHOT_GSON.fromJson(Files.readString(snapshotFile, StandardCharsets.UTF_8), SnapshotFile.class);
+
+            if (snapshot == null || snapshot.suggestions() == null) {
+                return;
+            }
+
+            List<Suggestion> suggestions = snapshot.suggestions().stream().map(Suggestion::new).toList();
+
+            for (Suggestion suggestion : suggestions) {
+                this.cache.put(suggestion.getThreadId(), suggestion);
+                this.index.put(suggestion);
+            }
+
+            this.restoredFromSnapshot = true;
+            this.initialized = true;
+            log.info("Loaded " + this.cache.size() + " suggestions from the snapshot saved at " + Instant.ofEpochMilli(snapshot.savedTime()));
+        } catch (IOException | RuntimeException exception) {
+            log.warn("Failed to read suggestion cache snapshot from " + snapshotFile + ", loading every suggestion instead", exception);
+        }
+    }
+
+    private void saveSnapshot() {
+        Path snapshotFile = getSnapshotFile();
+
+        if (snapshotFile == null || !this.initialized) {
+            return;
+        }
+
+        synchronized (this.snapshotLock) {
+            this.snapshotDirty = false;
+            SnapshotFile snapshot = new SnapshotFile(System.currentTimeMillis(), this.cache.values().stream().map(Suggestion::toSnapshot).toList());
+
+            try {
+                Path parent = snapshotFile.toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+
+                // Write to a temporary file first so a crash mid-write never leaves a corrupt snapshot behind
+                Path temporaryFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+                Files.writeString(temporaryFile, SNAPSHOT_GSON.toJson(snapshot), StandardCharsets.UTF_8);
+                Files.move(temporaryFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                log.debug("Saved " + snapshot.suggestions().size() + " suggestions to " + snapshotFile);
+            } catch (IOException exception) {
+                this.snapshotDirty = true;
+                log.error("Failed to save suggestion cache snapshot to " + snapshotFile, exception);
+            }
+        }
+    }
+
+    @Nullable
+    private Path getSnapshotFile() {
+        String snapshotFile = NerdBotApp.getBot().getConfig().getSuggestionConfig().getCacheSnapshotFile();
+        return snapshotFile == null || snapshotFile.isBlank() ? null : Path.of(snapshotFile);
+    }
+
+    private record SnapshotFile(long savedTime, List<Suggestion.Snapshot> suggestions) {
+    }
+
+    private record VoteEmojis(EmojiConfig emojiConfig, Map<String, Suggestion.Vote> votesByEmojiId) {
     }
 }
@@ -0,0 +1,286 @@
+package net.hypixel.nerdbot.cache.suggestion;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.channel.concrete.ForumChannel;
+import net.dv8tion.jda.api.entities.channel.forums.ForumTag;
+import net.hypixel.nerdbot.NerdBotApp;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Index over the suggestions of a {@link SuggestionCache}, so suggestion commands are answered without sorting every
+ * suggestion or looking anything up through Discord.
+ * <br><br>
+ * The suggestions of each forum type are kept sorted in every {@link Sort} order, next to inverted indexes from tag
+ * IDs, owner IDs and the words in each title and first message to the threads that have them. Deleted suggestions are
+ * not indexed.
+ */
+public class SuggestionIndex {
+
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Suggestion> suggestions = new HashMap<>();
+    private final Map<Suggestion.ChannelType, Map<Sort, NavigableSet<Suggestion>>> sorted = new EnumMap<>(Suggestion.ChannelType.class);
+    private final Map<String, Set<String>> threadIdsByTagId = new HashMap<>();
+    private final Map<Long, Set<String>> threadIdsByOwnerId = new HashMap<>();
+    // Sorted, so words can be looked up by prefix
+    private final NavigableMap<String, Set<String>> threadIdsByWord = new TreeMap<>();
+
+    public SuggestionIndex() {
+        for (Suggestion.ChannelType channelType : Suggestion.ChannelType.values()) {
+            Map<Sort, NavigableSet<Suggestion>> views = new EnumMap<>(Sort.class);
+            Arrays.stream(Sort.VALUES).forEach(sort -> views.put(sort, new TreeSet<>(sort.getComparator())));
+            sorted.put(channelType, views);
+        }
+    }
+
+    /**
+     * Index a suggestion, replacing the previous suggestion of the same thread
+     */
+    void put(Suggestion suggestion) {
+        lock.writeLock().lock();
+
+        try {
+            removeLocked(suggestion.getThreadId());
+
+            if (suggestion.isDeleted()) {
+                return;
+            }
+
+            suggestions.put(suggestion.getThreadId(), suggestion);
+            getSortedViews(suggestion.getChannelType()).values().forEach(view -> view.add(suggestion));
+            suggestion.getAppliedTagIds().forEach(tagId -> threadIdsByTagId.computeIfAbsent(tagId, k -> new HashSet<>()).add(suggestion.getThreadId()));
+            threadIdsByOwnerId.computeIfAbsent(suggestion.getOwnerIdLong(), k -> new HashSet<>()).add(suggestion.getThreadId());
+            getWords(suggestion).forEach(word -> threadIdsByWord.computeIfAbsent(word, k -> new HashSet<>()).add(suggestion.getThreadId()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Change the vote counts of a suggestion, moving it to its new place in the sorted views
+     */
+    void changeVotes(Suggestion suggestion, Consumer<Suggestion> change) {
+        lock.writeLock().lock();
+
+        try {
+            // The sorted views can not find a suggestion once the values they are sorted by changed
+            boolean indexed = suggestions.get(suggestion.getThreadId()) == suggestion;
+            Map<Sort, NavigableSet<Suggestion>> views = getSortedViews(suggestion.getChannelType());
+
+            if (indexed) {
+                views.values().forEach(view -> view.remove(suggestion));
+            }
+
+            change.accept(suggestion);
+
+            if (indexed) {
+                views.values().forEach(view -> view.add(suggestion));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(String threadId) {
+        lock.writeLock().lock();
+
+        try {
+            removeLocked(threadId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+
+        try {
+            return suggestions.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the suggestions matching every given filter.
+     * <br><br>
+     * Text is matched by word instead of as a substring of the title: the text and each suggestion are split into words
+     * of letters and digits, and every word of the text has to start one of the suggestion's words, ignoring case. The
+     * first message is searched as well as the title, so "dragon arm" matches a suggestion titled "Armor for dragons"
+     * but "agon" does not.
+     *
+     * @param channelType The type of the forums to search in
+     * @param ownerId     The ID of the user that created the suggestions, or null for any user
+     * @param tagNames    The names of the tags every suggestion must have
+     * @param text        Words that must each start a word in the title or first message, or null for any text
+     * @param sort        The order of the returned suggestions
+     *
+     * @return The matching suggestions, sorted
+     */
+    public List<Suggestion> query(Suggestion.ChannelType channelType, @Nullable Long ownerId, Collection<String> tagNames, @Nullable String text, Sort sort) {
+        List<Set<String>> filters = new ArrayList<>();
+        // Resolved before locking, tags are read from the forums cached by JDA
+        List<Set<String>> tagIds = tagNames.stream().map(SuggestionIndex::getTagIds).toList();
+
+        lock.readLock().lock();
+
+        try {
+            if (ownerId != null) {
+                filters.add(threadIdsByOwnerId.getOrDefault(ownerId, Set.of()));
+            }
+
+            for (Set<String> ids : tagIds) {
+                filters.add(getThreadIds(ids, threadIdsByTagId::get));
+            }
+
+            if (text != null) {
+                for (String word : split(text)) {
+                    Set<String> threadIds = new HashSet<>();
+                    threadIdsByWord.subMap(word, true, word + Character.MAX_VALUE, false).values().forEach(threadIds::addAll);
+                    filters.add(threadIds);
+                }
+            }
+
+            NavigableSet<Suggestion> view = getSortedViews(channelType).get(sort);
+
+            if (filters.isEmpty()) {
+                return List.copyOf(view);
+            }
+
+            // Start from the smallest filter, so the other filters are only checked for suggestions that can match
+            filters.sort(Comparator.comparingInt(Set::size));
+            List<Suggestion> matches = new ArrayList<>();
+
+            for (String threadId : filters.get(0)) {
+                Suggestion suggestion = suggestions.get(threadId);
+
+                if (suggestion != null && suggestion.getChannelType() == channelType && filters.stream().allMatch(filter -> filter.contains(threadId))) {
+                    matches.add(suggestion);
+                }
+            }
+
+            matches.sort(view.comparator());
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeLocked(String threadId) {
+        Suggestion previous = suggestions.remove(threadId);
+
+        if (previous == null) {
+            return;
+        }
+
+        getSortedViews(previous.getChannelType()).values().forEach(view -> view.remove(previous));
+        previous.getAppliedTagIds().forEach(tagId -> removeThreadId(threadIdsByTagId, tagId, threadId));
+        removeThreadId(threadIdsByOwnerId, previous.getOwnerIdLong(), threadId);
+        getWords(previous).forEach(word -> removeThreadId(threadIdsByWord, word, threadId));
+    }
+
+    private Map<Sort, NavigableSet<Suggestion>> getSortedViews(Suggestion.ChannelType channelType) {
+        return sorted.get(channelType);
+    }
+
+    private static <K> void removeThreadId(Map<K, Set<String>> index, K key, String threadId) {
+        index.computeIfPresent(key, (k, threadIds) -> {
+            threadIds.remove(threadId);
+            return threadIds.isEmpty() ? null : threadIds;
+        });
+    }
+
+    private static Set<String> getThreadIds(Set<String> keys, Function<String, Set<String>> lookup) {
+        Set<String> threadIds = new HashSet<>();
+
+        for (String key : keys) {
+            Set<String> ids = lookup.apply(key);
+            if (ids != null) {
+                threadIds.addAll(ids);
+            }
+        }
+
+        return threadIds;
+    }
+
+    private static Set<String> getWords(Suggestion suggestion) {
+        Set<String> words = new HashSet<>(split(suggestion.getThreadName()));
+
+        if (suggestion.getFirstMessageSummary() != null) {
+            words.addAll(split(suggestion.getFirstMessageSummary()));
+        }
+
+        return words;
+    }
+
+    private static List<String> split(String text) {
+        return Arrays.stream(WORD_SEPARATOR.split(text.toLowerCase()))
+            .filter(word -> !word.isEmpty())
+            .toList();
+    }
+
+    /**
+     * @return The IDs of the tags with the given name in any forum, as every forum has its own tags
+     */
+    private static Set<String> getTagIds(String tagName) {
+        JDA jda = NerdBotApp.getBot().getJDA();
+        Set<String> tagIds = new HashSet<>();
+
+        for (ForumChannel forumChannel : jda.getForumChannels()) {
+            for (ForumTag forumTag : forumChannel.getAvailableTags()) {
+                if (forumTag.getName().equalsIgnoreCase(tagName)) {
+                    tagIds.add(forumTag.getId());
+                }
+            }
+        }
+
+        return tagIds;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public enum Sort {
+
+        NEWEST("Newest", Comparator.comparingLong(Suggestion::getThreadIdLong).reversed()),
+        RATIO("Agree Ratio", Comparator.comparingDouble(Suggestion::getRatio).reversed()
+            .thenComparing(Comparator.comparingInt(Suggestion::getTotalVotes).reversed())
+            .thenComparing(Comparator.comparingLong(Suggestion::getThreadIdLong).reversed())),
+        VOTES("Total Votes", Comparator.comparingInt(Suggestion::getTotalVotes).reversed()
+            .thenComparing(Comparator.comparingLong(Suggestion::getThreadIdLong).reversed()));
+
+        public static final Sort[] VALUES = values();
+
+        private final String name;
+        private final Comparator<Suggestion> comparator;
+
+        public static Sort getType(String name) {
+            return Arrays.stream(VALUES)
+                .filter(sort -> sort.name().equalsIgnoreCase(name))
+                .findFirst()
+                .orElse(NEWEST);
+        }
+    }
+}
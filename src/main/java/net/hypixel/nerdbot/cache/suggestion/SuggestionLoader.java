@@ -0,0 +1,104 @@
+package net.hypixel.nerdbot.cache.suggestion;
+
+import net.dv8tion.jda.api.entities.channel.concrete.ThreadChannel;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Builds {@link Suggestion}s from the REST requests they need, with at most {@link #MAX_CONCURRENT_REQUESTS} requests
+ * in flight at once.
+ * <br><br>
+ * Every thread's history is its own rate limit bucket, so a full scan is only limited by the global request limit.
+ * Keeping the amount of requests in flight below it stops a scan from filling JDA's request queue ahead of commands.
+ * Loads requested by events are started before loads requested by a scan.
+ */
+public class SuggestionLoader {
+
+    /**
+     * The maximum amount of suggestion requests in flight at once
+     */
+    public static final int MAX_CONCURRENT_REQUESTS = Integer.getInteger("suggestion.loader.concurrency", 10);
+
+    private final Deque<Runnable> priorityLoads = new ArrayDeque<>();
+    private final Deque<Runnable> bulkLoads = new ArrayDeque<>();
+    private int running;
+
+    /**
+     * Load a suggestion once a request slot is free
+     *
+     * @param thread      The thread of the suggestion
+     * @param channelType The type of the forum the thread is in, or null to look it up
+     * @param priority    Whether the load should start before loads that are not a priority
+     *
+     * @return The suggestion, completed on a JDA thread
+     */
+    public CompletableFuture<Suggestion> load(ThreadChannel thread, @Nullable Suggestion.ChannelType channelType, boolean priority) {
+        CompletableFuture<Suggestion> future = new CompletableFuture<>();
+
+        enqueue(priority, () -> {
+            try {
+                thread.getHistoryFromBeginning(1).submit()
+                    .thenApply(history -> new Suggestion(thread, channelType, history.isEmpty() ? null : history.getRetrievedHistory().get(0)))
+                    .whenComplete((suggestion, throwable) -> {
+                        release();
+                        startLoads();
+
+                        if (throwable != null) {
+                            future.completeExceptionally(throwable);
+                        } else {
+                            future.complete(suggestion);
+                        }
+                    });
+            } catch (RuntimeException exception) {
+                // Thrown before the request is queued, such as for missing permissions. The next load is started by
+                // the loop that started this one.
+                release();
+                future.completeExceptionally(exception);
+            }
+        });
+
+        return future;
+    }
+
+    public synchronized int getQueuedLoads() {
+        return priorityLoads.size() + bulkLoads.size();
+    }
+
+    private void enqueue(boolean priority, Runnable load) {
+        synchronized (this) {
+            (priority ? priorityLoads : bulkLoads).add(load);
+        }
+
+        startLoads();
+    }
+
+    private synchronized void release() {
+        running--;
+    }
+
+    private void startLoads() {
+        while (true) {
+            Runnable load;
+
+            synchronized (this) {
+                if (running >= MAX_CONCURRENT_REQUESTS) {
+                    return;
+                }
+
+                load = priorityLoads.isEmpty() ? bulkLoads.poll() : priorityLoads.poll();
+
+                if (load == null) {
+                    return;
+                }
+
+                running++;
+            }
+
+            // Started outside the lock, so completing a request never waits on this loader
+            load.run();
+        }
+    }
+}
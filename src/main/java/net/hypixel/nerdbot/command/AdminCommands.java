@@ -11,6 +11,7 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonSyntaxException;
+import com.mongodb.bulk.BulkWriteResult;
 import lombok.extern.log4j.Log4j2;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.entities.Activity;
@@ -488,8 +489,7 @@ public class AdminCommands extends ApplicationCommand {
                 try {
                     MojangProfile mojangProfile = Util.getMojangProfile(scuffedUsername);
                     mojangProfiles.add(mojangProfile);
-                    DiscordUser user = discordUserRepository.findById(member.getId());
-                    user.setMojangProfile(mojangProfile);
+                    discordUserRepository.update(member.getId(), user -> user.setMojangProfile(mojangProfile));
                     log.info("Migrated " + member.getEffectiveName() + " [" + member.getUser().getName() + "] (" + member.getId() + ") to " + mojangProfile.getUsername() + " (" + mojangProfile.getUniqueId() + ")");
                 } catch (HttpException exception) {
                     log.error("Unable to migrate " + member.getEffectiveName() + "(ID: " + member.getId() + ")", exception);
@@ -518,8 +518,9 @@ public class AdminCommands extends ApplicationCommand {
                 return;
             }
 
-            repository.saveAllToDatabase();
-            TranslationManager.edit(event.getHook(), discordUser, "repository.saved_to_database", repository.getCache().estimatedSize());
+            BulkWriteResult result = repository.saveAllToDatabase();
+            int saved = result == null ? 0 : result.getModifiedCount() + result.getUpserts().size();
+            TranslationManager.edit(event.getHook(), discordUser, "repository.saved_to_database", saved);
         } catch (RepositoryException exception) {
             TranslationManager.edit(event.getHook(), discordUser, "repository.save_error", exception.getMessage());
             log.error("An error occurred while saving the repository!", exception);
@@ -54,7 +54,9 @@ public class BadgeCommands extends ApplicationCommand {
                 return;
             }
 
-            if (discordUser.addBadge(tieredBadge, tier)) {
+            int finalTier = tier;
+
+            if (discordUserRepository.updateIfChanged(discordUser, user -> user.addBadge(tieredBadge, finalTier))) {
                 TranslationManager.edit(event.getHook(), "commands.badge.gave_tier", tier, badge.getName(), member.getEffectiveName());
                 log.info(event.getMember().getEffectiveName() + " gave " + member.getEffectiveName() + " tier " + tier + " of badge '" + badge.getName() + "' (ID: " + badge.getId() + ")");
             } else {
@@ -66,7 +68,7 @@ public class BadgeCommands extends ApplicationCommand {
                 return;
             }
 
-            if (discordUser.addBadge(badge)) {
+            if (discordUserRepository.updateIfChanged(discordUser, user -> user.addBadge(badge))) {
                 TranslationManager.edit(event.getHook(), "commands.badge.gave_badge", badge.getName(), member.getEffectiveName());
                 log.info(event.getMember().getEffectiveName() + " gave " + member.getEffectiveName() + " badge '" + badge.getName() + "' (ID: " + badge.getId() + ")");
             } else {
@@ -96,14 +98,16 @@ public class BadgeCommands extends ApplicationCommand {
 
         if (badge instanceof TieredBadge tieredBadge) {
             tier = tier < 1 ? 1 : tier;
-            if (discordUser.removeBadge(tieredBadge, tier)) {
+            int finalTier = tier;
+
+            if (discordUserRepository.updateIfChanged(discordUser, user -> user.removeBadge(tieredBadge, finalTier))) {
                 TranslationManager.edit(event.getHook(), "commands.badge.removed_tier", tier, badge.getName(), member.getEffectiveName());
                 log.info(event.getMember().getEffectiveName() + " removed tier " + tier + " of badge '" + badge.getName() + "' (ID: " + badge.getId() + ") from " + member.getEffectiveName());
             } else {
                 TranslationManager.edit(event.getHook(), "commands.badge.does_not_have_tier", member.getEffectiveName(), tier, badge.getName());
             }
         } else {
-            if (discordUser.removeBadge(badge)) {
+            if (discordUserRepository.updateIfChanged(discordUser, user -> user.removeBadge(badge))) {
                 TranslationManager.edit(event.getHook(), "commands.badge.removed_badge", badge.getName(), member.getEffectiveName());
                 log.info(event.getMember().getEffectiveName() + " removed badge '" + badge.getName() + "' (ID: " + badge.getId() + ") from " + member.getEffectiveName());
             } else {
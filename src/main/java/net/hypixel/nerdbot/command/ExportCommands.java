@@ -306,25 +306,25 @@ public class ExportCommands extends ApplicationCommand {
             return;
         }
 
-        List<DiscordUser> discordUsers = discordUserRepository.getAll();
-
         inactivityDays = inactivityDays != 0 ? inactivityDays : NerdBotApp.getBot().getConfig().getInactivityDays();
         inactivityMessages = inactivityMessages != 0 ? inactivityMessages : NerdBotApp.getBot().getConfig().getInactivityMessages();
         long inactivityTimestamp = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(inactivityDays);
 
-        discordUsers.removeIf(discordUser -> {
-            Member member = event.getGuild().getMemberById(discordUser.getDiscordId());
-            return member != null && RoleManager.hasAnyRole(member, Util.SPECIAL_ROLES);
-        });
-
         int finalInactivityDays = inactivityDays;
         int finalInactivityMessages = inactivityMessages;
-        discordUsers.removeIf(discordUser -> {
-            LastActivity lastActivity = discordUser.getLastActivity();
-            return lastActivity.getChannelActivityHistory().stream()
-                .filter(channelActivityEntry -> !Arrays.asList(NerdBotApp.getBot().getConfig().getChannelConfig().getBlacklistedChannels()).contains(channelActivityEntry.getChannelId()))
-                .anyMatch(entry -> entry.getLastMessageTimestamp() > inactivityTimestamp && discordUser.getLastActivity().getTotalMessageCount(finalInactivityDays) > finalInactivityMessages);
-        });
+        List<String> blacklistedChannels = Arrays.asList(NerdBotApp.getBot().getConfig().getChannelConfig().getBlacklistedChannels());
+        List<DiscordUser> discordUsers = discordUserRepository.stream()
+            .filter(discordUser -> {
+                Member member = event.getGuild().getMemberById(discordUser.getDiscordId());
+                return member == null || !RoleManager.hasAnyRole(member, Util.SPECIAL_ROLES);
+            })
+            .filter(discordUser -> discordUserRepository.withLock(discordUser, user -> {
+                LastActivity lastActivity = user.getLastActivity();
+                return lastActivity.getChannelActivityHistory().stream()
+                    .filter(channelActivityEntry -> !blacklistedChannels.contains(channelActivityEntry.getChannelId()))
+                    .noneMatch(entry -> entry.getLastMessageTimestamp() > inactivityTimestamp && lastActivity.getTotalMessageCount(finalInactivityDays) > finalInactivityMessages);
+            }))
+            .toList();
 
         log.info(event.getMember().getEffectiveName() + " is exporting member activity for " + discordUsers.size() + " members that meet the requirements (" + inactivityDays + " days of inactivity and " + inactivityMessages + " messages)");
 
@@ -338,12 +338,13 @@ public class ExportCommands extends ApplicationCommand {
 
             LastActivity lastActivity = discordUser.getLastActivity();
 
-            String channelActivity = lastActivity.getChannelActivityHistory(inactivityDays)
+            // Read under the user's lock as the channel history may be changed by the activity writers
+            String channelActivity = discordUserRepository.withLock(discordUser, user -> lastActivity.getChannelActivityHistory(finalInactivityDays)
                     .stream()
-                    .filter(entry -> !Arrays.asList(NerdBotApp.getBot().getConfig().getChannelConfig().getBlacklistedChannels()).contains(entry.getChannelId()))
+                    .filter(entry -> !blacklistedChannels.contains(entry.getChannelId()))
                     .map(entry -> "#" + entry.getLastKnownDisplayName() + ": " + entry.getMessageCount())
                     .reduce((s1, s2) -> s1 + "\n" + s2)
-                    .orElse("N/A");
+                    .orElse("N/A"));
 
             csvData.addRow(List.of(
                     member.getUser().getName(),
@@ -351,16 +352,16 @@ public class ExportCommands extends ApplicationCommand {
                     formatTimestamp(lastActivity.getLastGlobalActivity()),
                     formatTimestamp(lastActivity.getLastVoiceChannelJoinDate()),
                     formatTimestamp(lastActivity.getLastItemGenUsage()),
-                    lastActivity.getSuggestionCreationHistory().isEmpty() ? "N/A" : formatTimestamp(lastActivity.getSuggestionCreationHistory().get(0)),
-                    lastActivity.getProjectSuggestionCreationHistory().isEmpty() ? "N/A" : formatTimestamp(lastActivity.getProjectSuggestionCreationHistory().get(0)),
-                    lastActivity.getAlphaSuggestionCreationHistory().isEmpty() ? "N/A" : formatTimestamp(lastActivity.getAlphaSuggestionCreationHistory().get(0)),
-                    lastActivity.getSuggestionVoteHistory().isEmpty() ? "N/A" : formatTimestamp(lastActivity.getSuggestionVoteHistory().get(0)),
-                    lastActivity.getProjectSuggestionVoteHistory().isEmpty() ? "N/A" : formatTimestamp(lastActivity.getProjectSuggestionVoteHistory().get(0)),
-                    lastActivity.getAlphaSuggestionVoteHistory().isEmpty() ? "N/A" : formatTimestamp(lastActivity.getAlphaSuggestionVoteHistory().get(0)),
+                    lastActivity.getSuggestionCreationHistory().isEmpty() ? "N/A" : formatTimestamp(lastActivity.getSuggestionCreationHistory().getLatest()),
+                    lastActivity.getProjectSuggestionCreationHistory().isEmpty() ? "N/A" : formatTimestamp(lastActivity.getProjectSuggestionCreationHistory().getLatest()),
+                    lastActivity.getAlphaSuggestionCreationHistory().isEmpty() ? "N/A" : formatTimestamp(lastActivity.getAlphaSuggestionCreationHistory().getLatest()),
+                    lastActivity.getSuggestionVoteHistory().isEmpty() ? "N/A" : formatTimestamp(lastActivity.getSuggestionVoteHistory().getLatest()),
+                    lastActivity.getProjectSuggestionVoteHistory().isEmpty() ? "N/A" : formatTimestamp(lastActivity.getProjectSuggestionVoteHistory().getLatest()),
+                    lastActivity.getAlphaSuggestionVoteHistory().isEmpty() ? "N/A" : formatTimestamp(lastActivity.getAlphaSuggestionVoteHistory().getLatest()),
                     formatTimestamp(lastActivity.getLastProjectActivity()),
                     formatTimestamp(lastActivity.getLastAlphaActivity()),
                     formatTimestamp(lastActivity.getLastModMailUsage()),
-                    String.valueOf(lastActivity.getTotalMessageCount(finalInactivityDays)),
+                    String.valueOf(discordUserRepository.withLock(discordUser, user -> lastActivity.getTotalMessageCount(finalInactivityDays))),
                     "\"" + channelActivity + "\"",
                     "FALSE"
             ));
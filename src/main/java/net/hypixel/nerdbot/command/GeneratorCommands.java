@@ -17,7 +17,6 @@ import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.events.interaction.command.CommandAutoCompleteInteractionEvent;
 import net.dv8tion.jda.api.utils.FileUpload;
 import net.hypixel.nerdbot.NerdBotApp;
-import net.hypixel.nerdbot.api.database.model.user.DiscordUser;
 import net.hypixel.nerdbot.cache.ChannelCache;
 import net.hypixel.nerdbot.generator.GeneratorBuilder;
 import net.hypixel.nerdbot.generator.ImageMerger;
@@ -132,9 +131,8 @@ public class GeneratorCommands extends ApplicationCommand {
 
         // Log item gen activity
         DiscordUserRepository discordUserRepository = NerdBotApp.getBot().getDatabase().getRepositoryManager().getRepository(DiscordUserRepository.class);
-        DiscordUser discordUser = discordUserRepository.findById(event.getMember().getId());
         long currentTime = System.currentTimeMillis();
-        discordUser.getLastActivity().setLastItemGenUsage(currentTime);
+        discordUserRepository.update(event.getMember().getId(), user -> user.getLastActivity().setLastItemGenUsage(currentTime));
         log.info("Updating last item generator activity date for " + Util.getDisplayName(event.getUser()) + " to " + currentTime);
     }
 
@@ -159,9 +157,8 @@ public class GeneratorCommands extends ApplicationCommand {
 
         // Log item gen activity
         DiscordUserRepository discordUserRepository = NerdBotApp.getBot().getDatabase().getRepositoryManager().getRepository(DiscordUserRepository.class);
-        DiscordUser discordUser = discordUserRepository.findById(event.getMember().getId());
         long currentTime = System.currentTimeMillis();
-        discordUser.getLastActivity().setLastItemGenUsage(currentTime);
+        discordUserRepository.update(event.getMember().getId(), user -> user.getLastActivity().setLastItemGenUsage(currentTime));
         log.info("Updating last item generator activity date for " + Util.getDisplayName(event.getUser()) + " to " + currentTime);
     }
 
@@ -183,9 +180,8 @@ public class GeneratorCommands extends ApplicationCommand {
 
         // Log item gen activity
         DiscordUserRepository discordUserRepository = NerdBotApp.getBot().getDatabase().getRepositoryManager().getRepository(DiscordUserRepository.class);
-        DiscordUser discordUser = discordUserRepository.findById(event.getMember().getId());
         long currentTime = System.currentTimeMillis();
-        discordUser.getLastActivity().setLastItemGenUsage(currentTime);
+        discordUserRepository.update(event.getMember().getId(), user -> user.getLastActivity().setLastItemGenUsage(currentTime));
         log.info("Updating last item generator activity date for " + Util.getDisplayName(event.getUser()) + " to " + currentTime);
     }
 
@@ -252,9 +248,8 @@ public class GeneratorCommands extends ApplicationCommand {
 
         // Log item gen activity
         DiscordUserRepository discordUserRepository = NerdBotApp.getBot().getDatabase().getRepositoryManager().getRepository(DiscordUserRepository.class);
-        DiscordUser discordUser = discordUserRepository.findById(event.getMember().getId());
         long currentTime = System.currentTimeMillis();
-        discordUser.getLastActivity().setLastItemGenUsage(currentTime);
+        discordUserRepository.update(event.getMember().getId(), user -> user.getLastActivity().setLastItemGenUsage(currentTime));
         log.info("Updating last item generator activity date for " + Util.getDisplayName(event.getUser()) + " to " + currentTime);
     }
 
@@ -279,9 +274,8 @@ public class GeneratorCommands extends ApplicationCommand {
 
         // Log item gen activity
         DiscordUserRepository discordUserRepository = NerdBotApp.getBot().getDatabase().getRepositoryManager().getRepository(DiscordUserRepository.class);
-        DiscordUser discordUser = discordUserRepository.findById(event.getMember().getId());
         long currentTime = System.currentTimeMillis();
-        discordUser.getLastActivity().setLastItemGenUsage(currentTime);
+        discordUserRepository.update(event.getMember().getId(), user -> user.getLastActivity().setLastItemGenUsage(currentTime));
         log.info("Updating last item generator activity date for " + Util.getDisplayName(event.getUser()) + " to " + currentTime);
     }
 
@@ -453,9 +447,8 @@ public class GeneratorCommands extends ApplicationCommand {
 
         // Log item gen activity
         DiscordUserRepository discordUserRepository = NerdBotApp.getBot().getDatabase().getRepositoryManager().getRepository(DiscordUserRepository.class);
-        DiscordUser discordUser = discordUserRepository.findById(event.getMember().getId());
         long currentTime = System.currentTimeMillis();
-        discordUser.getLastActivity().setLastItemGenUsage(currentTime);
+        discordUserRepository.update(event.getMember().getId(), user -> user.getLastActivity().setLastItemGenUsage(currentTime));
         log.info("Updating last item generator activity date for " + Util.getDisplayName(event.getUser()) + " to " + currentTime);
     }
 
@@ -1,5 +1,6 @@
 package net.hypixel.nerdbot.command;
 
+import com.freya02.botcommands.api.annotations.Optional;
 import com.freya02.botcommands.api.application.ApplicationCommand;
 import com.freya02.botcommands.api.application.annotations.AppOption;
 import com.freya02.botcommands.api.application.slash.GuildSlashEvent;
@@ -14,13 +15,13 @@ import com.freya02.botcommands.api.pagination.paginator.PaginatorBuilder;
 import lombok.extern.log4j.Log4j2;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.Role;
 import net.dv8tion.jda.api.entities.SelfUser;
 import net.hypixel.nerdbot.NerdBotApp;
 import net.hypixel.nerdbot.api.bot.Environment;
 import net.hypixel.nerdbot.api.database.Database;
 import net.hypixel.nerdbot.api.database.model.greenlit.GreenlitMessage;
-import net.hypixel.nerdbot.api.database.model.user.DiscordUser;
 import net.hypixel.nerdbot.repository.DiscordUserRepository;
 import net.hypixel.nerdbot.repository.GreenlitMessageRepository;
 import net.hypixel.nerdbot.role.RoleManager;
@@ -31,10 +32,11 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 @Log4j2
 public class InfoCommands extends ApplicationCommand {
@@ -44,25 +46,17 @@ public class InfoCommands extends ApplicationCommand {
 
     private final Database database = NerdBotApp.getBot().getDatabase();
 
+    /**
+     * @return The IDs of every member that should not show up in user lists because they are a bot or have a special role
+     */
     @NotNull
-    private static List<DiscordUser> getDiscordUsers(DiscordUserRepository repository) {
-        List<DiscordUser> users = new ArrayList<>(repository.getAll());
-
-        log.info("Checking " + users.size() + " users");
-
-        Iterator<DiscordUser> iterator = users.iterator();
-        while (iterator.hasNext()) {
-            DiscordUser user = iterator.next();
+    private static Set<String> getExcludedUserIds(Guild guild) {
+        List<String> specialRoles = Arrays.asList(Util.SPECIAL_ROLES);
 
-            user.getMember().ifPresent(member -> {
-                if (member.getUser().isBot() || Arrays.stream(Util.SPECIAL_ROLES).anyMatch(s -> member.getRoles().stream().map(Role::getName).toList().contains(s))) {
-                    iterator.remove();
-                    log.debug("Removed " + user.getDiscordId() + " from the list of users because they are a bot or have a special role");
-                }
-            });
-        }
-
-        return users;
+        return guild.getMembers().stream()
+            .filter(member -> member.getUser().isBot() || member.getRoles().stream().map(Role::getName).anyMatch(specialRoles::contains))
+            .map(Member::getId)
+            .collect(Collectors.toSet());
     }
 
     /**
@@ -126,7 +120,9 @@ public class InfoCommands extends ApplicationCommand {
             return;
         }
 
-        repository.getAll().forEach(greenlitMessage -> embeds.add(greenlitMessage.createEmbed()));
+        // Page from one copy so the embeds and the selection menu options stay in the same order
+        List<GreenlitMessage> greenlitMessages = repository.getAll();
+        greenlitMessages.forEach(greenlitMessage -> embeds.add(greenlitMessage.createEmbed()));
 
         Paginator paginator = new PaginatorBuilder()
             .setConstraints(InteractionConstraints.ofUsers(event.getUser()))
@@ -140,7 +136,7 @@ public class InfoCommands extends ApplicationCommand {
                         break;
                     }
 
-                    GreenlitMessage greenlitMessage = repository.getByIndex(i);
+                    GreenlitMessage greenlitMessage = greenlitMessages.get(i);
                     String description = greenlitMessage.getSuggestionContent().length() > 100 ? greenlitMessage.getSuggestionContent().substring(0, 96) + "..." : greenlitMessage.getSuggestionContent();
                     builder.addOption(greenlitMessage.getSuggestionTitle(), greenlitMessage.getMessageId(), description);
                 }
@@ -202,44 +198,60 @@ public class InfoCommands extends ApplicationCommand {
             return;
         }
 
+        // The ranking is aggregated in the database, which can take longer than an interaction allows
+        event.deferReply(true).complete();
+
         DiscordUserRepository repository = NerdBotApp.getBot().getDatabase().getRepositoryManager().getRepository(DiscordUserRepository.class);
-        List<DiscordUser> users = getDiscordUsers(repository);
-        users.sort(Comparator.comparingLong(discordUser -> discordUser.getLastActivity().getLastGlobalActivity()));
+        Map<String, Long> users = repository.rankByLastGlobalActivity(getExcludedUserIds(event.getGuild()), (Math.max(page, 1) - 1) * 10, 10);
 
         StringBuilder stringBuilder = new StringBuilder("**Page " + page + "**\n");
 
-        getPage(users, page, 10).forEach(discordUser -> {
-            discordUser.getMember().ifPresentOrElse(member -> {
-                stringBuilder.append(" • ")
-                    .append(member.getAsMention())
-                    .append(" (")
-                    .append(DiscordTimestamp.toLongDateTime(discordUser.getLastActivity().getLastGlobalActivity()))
-                    .append(")")
-                    .append("\n");
-            }, () -> log.error("Couldn't find member " + discordUser.getDiscordId()));
+        users.forEach((discordId, lastGlobalActivity) -> {
+            Member member = repository.getMemberById(discordId);
+
+            if (member == null) {
+                log.error("Couldn't find member " + discordId);
+                return;
+            }
+
+            stringBuilder.append(" • ")
+                .append(member.getAsMention())
+                .append(" (")
+                .append(DiscordTimestamp.toLongDateTime(lastGlobalActivity))
+                .append(")")
+                .append("\n");
         });
 
-        event.reply(stringBuilder.toString()).setEphemeral(true).queue();
+        event.getHook().editOriginal(stringBuilder.toString()).queue();
     }
 
     @JDASlashCommand(name = "info", subcommand = "messages", description = "View an ordered list of users with the most messages", defaultLocked = true)
-    public void userMessageInfo(GuildSlashEvent event, @AppOption int page) {
+    public void userMessageInfo(GuildSlashEvent event, @AppOption int page, @AppOption(description = "Only count messages sent in this many days") @Optional int days) {
         if (!database.isConnected()) {
             event.reply("Couldn't connect to the database!").setEphemeral(true).queue();
             return;
         }
 
-        List<DiscordUser> users = getDiscordUsers(NerdBotApp.getBot().getDatabase().getRepositoryManager().getRepository(DiscordUserRepository.class));
-        users.sort(Comparator.comparingInt(value -> value.getLastActivity().getTotalMessageCount()));
+        event.deferReply(true).complete();
+
+        DiscordUserRepository repository = NerdBotApp.getBot().getDatabase().getRepositoryManager().getRepository(DiscordUserRepository.class);
+        Set<String> excludedIds = getExcludedUserIds(event.getGuild());
+        int skip = (Math.max(page, 1) - 1) * 10;
+        Map<String, Long> users = days > 0 ? repository.rankByMessageCount(days, excludedIds, skip, 10) : repository.rankByTotalMessageCount(excludedIds, skip, 10);
 
         StringBuilder stringBuilder = new StringBuilder("**Page " + page + "**\n");
 
-        getPage(users, page, 10).forEach(discordUser -> {
-            discordUser.getMember().ifPresentOrElse(member -> {
-                stringBuilder.append(" • ").append(member.getAsMention()).append(" (").append(Util.COMMA_SEPARATED_FORMAT.format(discordUser.getLastActivity().getTotalMessageCount())).append(")").append("\n");
-            }, () -> log.error("Couldn't find member " + discordUser.getDiscordId()));
+        users.forEach((discordId, totalMessageCount) -> {
+            Member member = repository.getMemberById(discordId);
+
+            if (member == null) {
+                log.error("Couldn't find member " + discordId);
+                return;
+            }
+
+            stringBuilder.append(" • ").append(member.getAsMention()).append(" (").append(Util.COMMA_SEPARATED_FORMAT.format(totalMessageCount)).append(")").append("\n");
         });
 
-        event.reply(stringBuilder.toString()).setEphemeral(true).queue();
+        event.getHook().editOriginal(stringBuilder.toString()).queue();
     }
 }
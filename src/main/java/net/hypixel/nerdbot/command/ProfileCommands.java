@@ -34,6 +34,7 @@ import net.hypixel.nerdbot.api.database.model.user.stats.MojangProfile;
 import net.hypixel.nerdbot.api.language.TranslationManager;
 import net.hypixel.nerdbot.cache.ChannelCache;
 import net.hypixel.nerdbot.cache.suggestion.Suggestion;
+import net.hypixel.nerdbot.cache.suggestion.SuggestionIndex;
 import net.hypixel.nerdbot.repository.DiscordUserRepository;
 import net.hypixel.nerdbot.role.RoleManager;
 import net.hypixel.nerdbot.util.Util;
@@ -276,8 +277,9 @@ public class ProfileCommands extends ApplicationCommand {
         GuildSlashEvent event,
         @AppOption @Optional Integer page,
         @AppOption(description = "Tags to filter for (comma separated).") @Optional String tags,
-        @AppOption(description = "Words to filter title for.") @Optional String title,
-        @AppOption(description = "Show suggestions from a specific category.", autocomplete = "suggestion-types") @Optional Suggestion.ChannelType type
+        @AppOption(description = "Words to search the title and first message for.") @Optional String title,
+        @AppOption(description = "Show suggestions from a specific category.", autocomplete = "suggestion-types") @Optional Suggestion.ChannelType type,
+        @AppOption(description = "Order to sort the suggestions in.", autocomplete = "suggestion-sorts") @Optional SuggestionIndex.Sort sort
     ) {
         event.deferReply(true).complete();
 
@@ -293,7 +295,7 @@ public class ProfileCommands extends ApplicationCommand {
         final int pageNum = Math.max(page, 1);
         type = (type == null ? Suggestion.ChannelType.NORMAL : type);
 
-        List<Suggestion> suggestions = SuggestionCommands.getSuggestions(event.getMember(), event.getMember().getIdLong(), tags, title, type);
+        List<Suggestion> suggestions = SuggestionCommands.getSuggestions(event.getMember(), event.getMember().getIdLong(), tags, title, type, sort);
 
         if (suggestions.isEmpty()) {
             TranslationManager.edit(event.getHook(), discordUser, "cache.suggestions.filtered_none_found");
@@ -325,12 +327,13 @@ public class ProfileCommands extends ApplicationCommand {
         DiscordUserRepository discordUserRepository = NerdBotApp.getBot().getDatabase().getRepositoryManager().getRepository(DiscordUserRepository.class);
         DiscordUser discordUser = discordUserRepository.findById(event.getMember().getId());
 
-        if (discordUser.getBirthdayData().getTimer() != null) {
-            discordUser.getBirthdayData().getTimer().cancel();
-        }
+        discordUserRepository.update(discordUser.getDiscordId(), user -> {
+            if (user.getBirthdayData().getTimer() != null) {
+                user.getBirthdayData().getTimer().cancel();
+            }
 
-        discordUser.setBirthdayData(new BirthdayData());
-        discordUserRepository.cacheObject(discordUser);
+            user.setBirthdayData(new BirthdayData());
+        });
 
         TranslationManager.edit(event.getHook(), discordUser, "commands.birthday.removed");
     }
@@ -354,16 +357,19 @@ public class ProfileCommands extends ApplicationCommand {
         DiscordUser discordUser = discordUserRepository.findById(member.getId());
 
         try {
-            BirthdayData birthdayData = discordUser.getBirthdayData();
+            Date date = DateUtils.parseDate(birthday, new String[]{"MM/dd/yyyy"});
 
-            if (birthdayData.getTimer() != null) {
-                birthdayData.getTimer().cancel();
-            }
+            discordUserRepository.update(discordUser.getDiscordId(), user -> {
+                BirthdayData birthdayData = user.getBirthdayData();
 
-            Date date = DateUtils.parseDate(birthday, new String[]{"MM/dd/yyyy"});
-            discordUser.setBirthday(date);
-            birthdayData.setShouldAnnounceAge(announceAge != null && announceAge);
-            discordUser.scheduleBirthdayReminder(birthdayData.getBirthdayThisYear());
+                if (birthdayData.getTimer() != null) {
+                    birthdayData.getTimer().cancel();
+                }
+
+                user.setBirthday(date);
+                birthdayData.setShouldAnnounceAge(announceAge != null && announceAge);
+                user.scheduleBirthdayReminder(birthdayData.getBirthdayThisYear());
+            });
             TranslationManager.edit(event.getHook(), discordUser, "commands.birthday.set", DateFormatUtils.format(date, "dd MMMM yyyy"));
         } catch (Exception exception) {
             TranslationManager.edit(event.getHook(), discordUser, "commands.birthday.bad_date");
@@ -391,7 +397,7 @@ public class ProfileCommands extends ApplicationCommand {
             return;
         }
 
-        user.setLanguage(language);
+        repository.update(user.getDiscordId(), discordUser -> discordUser.setLanguage(language));
         TranslationManager.edit(event.getHook(), user, "commands.language.language_set", language.getName());
     }
 
@@ -457,6 +463,16 @@ public class ProfileCommands extends ApplicationCommand {
             throw new MojangProfileException(mojangProfile.getErrorMessage());
         }
 
+        // Admins that bypass the social check are allowed to move a profile from one member to another
+        if (enforceSocial) {
+            DiscordUserRepository discordUserRepository = NerdBotApp.getBot().getDatabase().getRepositoryManager().getRepository(DiscordUserRepository.class);
+            java.util.Optional<DiscordUser> linkedUser = discordUserRepository.findByMojangUniqueId(mojangProfile.getUniqueId());
+
+            if (linkedUser.isPresent() && !linkedUser.get().getDiscordId().equals(member.getId())) {
+                throw new MojangProfileMismatchException("The Minecraft account `" + mojangProfile.getUsername() + "` is already linked to another Discord account!");
+            }
+        }
+
         HypixelPlayerResponse hypixelPlayerResponse = Util.getHypixelPlayer(mojangProfile.getUniqueId());
 
         if (!hypixelPlayerResponse.isSuccess()) {
@@ -483,8 +499,7 @@ public class ProfileCommands extends ApplicationCommand {
 
     public static void updateMojangProfile(Member member, MojangProfile mojangProfile) throws HttpException {
         DiscordUserRepository discordUserRepository = NerdBotApp.getBot().getDatabase().getRepositoryManager().getRepository(DiscordUserRepository.class);
-        DiscordUser discordUser = discordUserRepository.findById(member.getId());
-        discordUser.setMojangProfile(mojangProfile);
+        discordUserRepository.update(member.getId(), discordUser -> discordUser.setMojangProfile(mojangProfile));
 
         if (!member.getEffectiveName().toLowerCase().contains(mojangProfile.getUsername().toLowerCase())) {
             try {
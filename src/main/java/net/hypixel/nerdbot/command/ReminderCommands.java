@@ -27,7 +27,6 @@ import java.awt.Color;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.format.DateTimeParseException;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
@@ -181,7 +180,7 @@ public class ReminderCommands extends ApplicationCommand {
                 .addEmbeds(embedBuilder.build())
                 .setSuppressedNotifications(true)
                 .queue();
-            reminder.schedule();
+            reminderRepository.schedule(reminder);
         } else {
             // If the reminder could not be saved, send an error message and log the error too
             TranslationManager.edit(event.getHook(), user, "commands.reminders.save_error");
@@ -202,10 +201,7 @@ public class ReminderCommands extends ApplicationCommand {
         }
 
         ReminderRepository reminderRepository = NerdBotApp.getBot().getDatabase().getRepositoryManager().getRepository(ReminderRepository.class);
-        List<Reminder> reminders = new ArrayList<>(reminderRepository
-            .filter(reminder -> reminder.getUserId().equalsIgnoreCase(event.getUser().getId()))
-            .stream()
-            .toList());
+        List<Reminder> reminders = reminderRepository.getRemindersByUser(event.getUser().getId());
 
         if (reminders.isEmpty()) {
             TranslationManager.edit(event.getHook(), user, "commands.reminders.no_reminders");
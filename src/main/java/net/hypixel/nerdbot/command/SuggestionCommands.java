@@ -28,8 +28,8 @@ import net.hypixel.nerdbot.bot.config.suggestion.SuggestionConfig;
 import net.hypixel.nerdbot.cache.ChannelCache;
 import net.hypixel.nerdbot.cache.EmojiCache;
 import net.hypixel.nerdbot.cache.suggestion.Suggestion;
+import net.hypixel.nerdbot.cache.suggestion.SuggestionIndex;
 import net.hypixel.nerdbot.repository.DiscordUserRepository;
-import net.hypixel.nerdbot.util.Util;
 import net.hypixel.nerdbot.util.discord.DiscordTimestamp;
 import org.apache.commons.lang.StringUtils;
 import org.jetbrains.annotations.Nullable;
@@ -58,40 +58,28 @@ public class SuggestionCommands extends ApplicationCommand {
      * @param member      The member looking for suggestions.
      * @param userId      The user ID to filter by.
      * @param tags        The tags to filter by.
-     * @param title       The title to filter by.
+     * @param title       Words that must each start a word in the title or first message, ignoring case.
      * @param channelType The {@link Suggestion.ChannelType} to filter by.
+     * @param sort        The order to sort the suggestions in, or null to sort by most recent.
      *
      * @return A list of suggestions that match the provided filters.
      */
-    public static List<Suggestion> getSuggestions(Member member, @Nullable Long userId, String tags, String title, Suggestion.ChannelType channelType) {
+    public static List<Suggestion> getSuggestions(Member member, @Nullable Long userId, String tags, String title, Suggestion.ChannelType channelType, @Nullable SuggestionIndex.Sort sort) {
         final List<String> searchTags = Arrays.asList(tags != null ? tags.split(", ?") : new String[0]);
+        SuggestionIndex index = NerdBotApp.getBot().getSuggestionCache().getIndex();
 
-        if (NerdBotApp.getBot().getSuggestionCache().getSuggestions().isEmpty()) {
+        if (index.size() == 0) {
             log.warn("Suggestions cache is empty!");
             return Collections.emptyList();
         }
 
-        return NerdBotApp.getBot().getSuggestionCache()
-            .getSuggestions()
-            .stream()
-            .filter(suggestion -> suggestion.getChannelType() == channelType)
-            .filter(Suggestion::notDeleted)
-            .filter(suggestion -> {
-                if (userId != null) {
-                    Member user = Util.getMainGuild().retrieveMemberById(userId).complete();
-                    return user != null && suggestion.getOwnerIdLong() == userId && suggestion.canSee(member);
-                }
-                return true;
-            })
-            .filter(suggestion -> searchTags.isEmpty() || searchTags.stream().allMatch(tag -> suggestion.getAppliedTags()
-                .stream()
-                .anyMatch(forumTag -> forumTag.getName().equalsIgnoreCase(tag))
-            ))
-            .filter(suggestion -> title == null || suggestion.getThreadName()
-                .toLowerCase()
-                .contains(title.toLowerCase())
-            )
-            .toList();
+        List<Suggestion> suggestions = index.query(channelType, userId, searchTags, title, sort == null ? SuggestionIndex.Sort.NEWEST : sort);
+
+        if (userId != null) {
+            return suggestions.stream().filter(suggestion -> suggestion.canSee(member)).toList();
+        }
+
+        return suggestions;
     }
 
     public static EmbedBuilder buildSuggestionsEmbed(Member member, List<Suggestion> suggestions, String tags, String title, Suggestion.ChannelType channelType, int pageNum, boolean showNames, boolean showRatio) {
@@ -102,7 +90,7 @@ public class SuggestionCommands extends ApplicationCommand {
         StringJoiner links = new StringJoiner("\n");
         double total = list.size();
         double greenlit = suggestions.stream().filter(Suggestion::isGreenlit).count();
-        String filters = (tags != null ? "- Filtered by tags: `" + tags + "`\n" : "") + (title != null ? "- Filtered by title: `" + title + "`\n" : "") + (channelType != Suggestion.ChannelType.NORMAL ? "- Filtered by Type: `" + channelType.getName() + "`" : "");
+        String filters = (tags != null ? "- Filtered by tags: `" + tags + "`\n" : "") + (title != null ? "- Filtered by words: `" + title + "`\n" : "") + (channelType != Suggestion.ChannelType.NORMAL ? "- Filtered by Type: `" + channelType.getName() + "`" : "");
 
         pages.forEach(suggestion -> {
             String link = "[" + suggestion.getThreadName().replaceAll("`", "") + "](" + suggestion.getJumpUrl() + ")";
@@ -362,8 +350,9 @@ public class SuggestionCommands extends ApplicationCommand {
         @AppOption(description = "User ID to view.") String userId,
         @AppOption @Optional Integer page,
         @AppOption(description = "Tags to filter for (comma separated).") @Optional String tags,
-        @AppOption(description = "Words to filter title for.") @Optional String title,
-        @AppOption(description = "Show suggestions from a specific category.", autocomplete = "suggestion-types") @Optional Suggestion.ChannelType channelType
+        @AppOption(description = "Words to search the title and first message for.") @Optional String title,
+        @AppOption(description = "Show suggestions from a specific category.", autocomplete = "suggestion-types") @Optional Suggestion.ChannelType channelType,
+        @AppOption(description = "Order to sort the suggestions in.", autocomplete = "suggestion-sorts") @Optional SuggestionIndex.Sort sort
     ) {
         event.deferReply(true).complete();
         page = (page == null) ? 1 : page;
@@ -374,7 +363,7 @@ public class SuggestionCommands extends ApplicationCommand {
             long userIdLong = Long.parseLong(userId);
             User searchUser = NerdBotApp.getBot().getJDA().getUserById(userIdLong);
             boolean showRatio = userIdLong == event.getMember().getIdLong() || event.getMember().hasPermission(Permission.MANAGE_PERMISSIONS);
-            List<Suggestion> suggestions = getSuggestions(event.getMember(), userIdLong, tags, title, channelType);
+            List<Suggestion> suggestions = getSuggestions(event.getMember(), userIdLong, tags, title, channelType, sort);
 
             if (suggestions.isEmpty()) {
                 TranslationManager.edit(event.getHook(), "cache.suggestions.filtered_none_found");
@@ -402,8 +391,9 @@ public class SuggestionCommands extends ApplicationCommand {
         @AppOption(description = "Member to view.") Member member,
         @AppOption @Optional Integer page,
         @AppOption(description = "Tags to filter for (comma separated).") @Optional String tags,
-        @AppOption(description = "Words to filter title for.") @Optional String title,
-        @AppOption(description = "Show suggestions from a specific category.", autocomplete = "suggestion-types") @Optional Suggestion.ChannelType type
+        @AppOption(description = "Words to search the title and first message for.") @Optional String title,
+        @AppOption(description = "Show suggestions from a specific category.", autocomplete = "suggestion-types") @Optional Suggestion.ChannelType type,
+        @AppOption(description = "Order to sort the suggestions in.", autocomplete = "suggestion-sorts") @Optional SuggestionIndex.Sort sort
     ) {
         event.deferReply(true).complete();
         page = (page == null) ? 1 : page;
@@ -411,7 +401,7 @@ public class SuggestionCommands extends ApplicationCommand {
         type = (type == null ? Suggestion.ChannelType.NORMAL : type);
         boolean showRatio = member.getIdLong() == event.getMember().getIdLong() || event.getMember().hasPermission(Permission.MANAGE_PERMISSIONS);
 
-        List<Suggestion> suggestions = getSuggestions(event.getMember(), member.getIdLong(), tags, title, type);
+        List<Suggestion> suggestions = getSuggestions(event.getMember(), member.getIdLong(), tags, title, type, sort);
 
         if (suggestions.isEmpty()) {
             TranslationManager.edit(event.getHook(), "cache.suggestions.filtered_none_found");
@@ -435,15 +425,16 @@ public class SuggestionCommands extends ApplicationCommand {
         GuildSlashEvent event,
         @AppOption @Optional Integer page,
         @AppOption(description = "Tags to filter for (comma separated).") @Optional String tags,
-        @AppOption(description = "Words to filter title for.") @Optional String title,
-        @AppOption(description = "Show suggestions from a specific category.", autocomplete = "suggestion-types") @Optional Suggestion.ChannelType type
+        @AppOption(description = "Words to search the title and first message for.") @Optional String title,
+        @AppOption(description = "Show suggestions from a specific category.", autocomplete = "suggestion-types") @Optional Suggestion.ChannelType type,
+        @AppOption(description = "Order to sort the suggestions in.", autocomplete = "suggestion-sorts") @Optional SuggestionIndex.Sort sort
     ) {
         event.deferReply(true).complete();
         page = (page == null) ? 1 : page;
         final int pageNum = Math.max(page, 1);
         type = (type == null ? Suggestion.ChannelType.NORMAL : type);
 
-        List<Suggestion> suggestions = getSuggestions(event.getMember(), null, tags, title, type);
+        List<Suggestion> suggestions = getSuggestions(event.getMember(), null, tags, title, type, sort);
 
         if (suggestions.isEmpty()) {
             TranslationManager.edit(event.getHook(), "cache.suggestions.filtered_none_found");
@@ -457,4 +448,9 @@ public class SuggestionCommands extends ApplicationCommand {
     public List<Suggestion.ChannelType> getSuggestionTypes(CommandAutoCompleteInteractionEvent event) {
         return List.of(Suggestion.ChannelType.VALUES);
     }
+
+    @AutocompletionHandler(name = "suggestion-sorts")
+    public List<SuggestionIndex.Sort> getSuggestionSorts(CommandAutoCompleteInteractionEvent event) {
+        return List.of(SuggestionIndex.Sort.VALUES);
+    }
 }
@@ -2,36 +2,56 @@ package net.hypixel.nerdbot.feature;
 
 import lombok.extern.log4j.Log4j2;
 import net.hypixel.nerdbot.NerdBotApp;
+import net.hypixel.nerdbot.api.database.model.user.DiscordUser;
 import net.hypixel.nerdbot.api.feature.BotFeature;
+import net.hypixel.nerdbot.metrics.PrometheusMetrics;
 import net.hypixel.nerdbot.repository.DiscordUserRepository;
 
-import java.time.Duration;
-import java.time.temporal.ChronoUnit;
+import java.util.List;
 import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Purges activity that has fallen out of each user's activity history. Users are indexed by when their oldest activity
+ * expires, so each run only touches the users that actually have something to purge.
+ */
 @Log4j2
 public class ActivityPurgeFeature extends BotFeature {
 
+    private static final long PURGE_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+
     @Override
     public void onFeatureStart() {
-        long oneHour = Duration.of(NerdBotApp.getBot().getConfig().getMojangUsernameCacheTTL(), ChronoUnit.HOURS).toMillis();
         this.timer.scheduleAtFixedRate(
             new TimerTask() {
                 @Override
                 public void run() {
                     if (NerdBotApp.getBot().isReadOnly()) {
-                        log.warn("Bot is in read-only mode, skipping profile update task!");
+                        log.warn("Bot is in read-only mode, skipping activity purge task!");
                         return;
                     }
 
                     DiscordUserRepository discordUserRepository = NerdBotApp.getBot().getDatabase().getRepositoryManager().getRepository(DiscordUserRepository.class);
-                    discordUserRepository.getAll().forEach(discordUser -> {
-                        if (discordUser.getLastActivity().purgeOldHistory()) {
-                            discordUserRepository.cacheObject(discordUser);
-                        }
-                    });
+                    List<DiscordUser> expiredUsers = discordUserRepository.getUsersWithExpiredActivity(System.currentTimeMillis());
+                    AtomicInteger purgedEntries = new AtomicInteger();
+
+                    for (DiscordUser discordUser : expiredUsers) {
+                        // Reported as changed even if nothing was purged, so the user is re-indexed by its next expiry
+                        discordUserRepository.updateIfChanged(discordUser, user -> {
+                            purgedEntries.addAndGet(user.getLastActivity().purgeOldHistory());
+                            return true;
+                        });
+                    }
+
+                    PrometheusMetrics.ACTIVITY_PURGED_ENTRIES.observe(purgedEntries.get());
+                    PrometheusMetrics.ACTIVITY_PURGED_USERS.observe(expiredUsers.size());
+
+                    if (!expiredUsers.isEmpty()) {
+                        log.debug("Purged " + purgedEntries.get() + " activity history entries from " + expiredUsers.size() + " users");
+                    }
                 }
-            }, oneHour, oneHour);
+            }, PURGE_INTERVAL, PURGE_INTERVAL);
     }
 
     @Override
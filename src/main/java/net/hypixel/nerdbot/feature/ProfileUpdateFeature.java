@@ -20,7 +20,8 @@ public class ProfileUpdateFeature extends BotFeature {
 
     public static void updateNickname(DiscordUser discordUser) {
         MojangProfile mojangProfile = Util.getMojangProfile(discordUser.getMojangProfile().getUniqueId());
-        discordUser.setMojangProfile(mojangProfile);
+        NerdBotApp.getBot().getDatabase().getRepositoryManager().getRepository(DiscordUserRepository.class)
+            .update(discordUser.getDiscordId(), user -> user.setMojangProfile(mojangProfile));
         Guild guild = Util.getMainGuild();
         Member member = guild.retrieveMemberById(discordUser.getDiscordId()).complete();
 
@@ -0,0 +1,41 @@
+package net.hypixel.nerdbot.feature;
+
+import lombok.extern.log4j.Log4j2;
+import net.hypixel.nerdbot.NerdBotApp;
+import net.hypixel.nerdbot.api.feature.BotFeature;
+import net.hypixel.nerdbot.repository.ReminderRepository;
+
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gives reminders a timer once they are close to being due. Reminders are indexed by their time, so each run only
+ * looks at the reminders that are due within {@link ReminderRepository#SCHEDULE_AHEAD} instead of keeping a timer
+ * thread around for every reminder.
+ */
+@Log4j2
+public class ReminderFeature extends BotFeature {
+
+    private static final long SCHEDULE_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    @Override
+    public void onFeatureStart() {
+        this.timer.scheduleAtFixedRate(
+            new TimerTask() {
+                @Override
+                public void run() {
+                    ReminderRepository reminderRepository = NerdBotApp.getBot().getDatabase().getRepositoryManager().getRepository(ReminderRepository.class);
+                    int scheduled = reminderRepository.scheduleDueReminders();
+
+                    if (scheduled > 0) {
+                        log.debug("Scheduled " + scheduled + " reminders that are due soon");
+                    }
+                }
+            }, 0, SCHEDULE_INTERVAL);
+    }
+
+    @Override
+    public void onFeatureEnd() {
+        this.timer.cancel();
+    }
+}
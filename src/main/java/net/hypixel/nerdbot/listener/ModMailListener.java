@@ -258,7 +258,8 @@ public class ModMailListener {
         }
 
         // Update last use
-        discordUser.getLastActivity().setLastModMailUsage(System.currentTimeMillis());
+        long currentTime = System.currentTimeMillis();
+        discordUserRepository.update(discordUser.getDiscordId(), user -> user.getLastActivity().setLastModMailUsage(currentTime));
     }
 
     @SubscribeEvent
@@ -2,16 +2,26 @@ package net.hypixel.nerdbot.listener;
 
 import lombok.extern.log4j.Log4j2;
 import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.channel.Channel;
 import net.dv8tion.jda.api.entities.channel.concrete.ForumChannel;
 import net.dv8tion.jda.api.entities.channel.concrete.ThreadChannel;
 import net.dv8tion.jda.api.entities.channel.forums.BaseForumTag;
 import net.dv8tion.jda.api.entities.channel.forums.ForumTag;
 import net.dv8tion.jda.api.entities.channel.forums.ForumTagData;
+import net.dv8tion.jda.api.entities.emoji.Emoji;
 import net.dv8tion.jda.api.events.channel.ChannelCreateEvent;
 import net.dv8tion.jda.api.events.channel.ChannelDeleteEvent;
 import net.dv8tion.jda.api.events.channel.GenericChannelEvent;
 import net.dv8tion.jda.api.events.channel.update.ChannelUpdateNameEvent;
+import net.dv8tion.jda.api.events.channel.update.GenericChannelUpdateEvent;
 import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
+import net.dv8tion.jda.api.events.message.MessageDeleteEvent;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.events.message.react.GenericMessageReactionEvent;
+import net.dv8tion.jda.api.events.message.react.MessageReactionAddEvent;
+import net.dv8tion.jda.api.events.message.react.MessageReactionRemoveAllEvent;
+import net.dv8tion.jda.api.events.message.react.MessageReactionRemoveEmojiEvent;
+import net.dv8tion.jda.api.events.message.react.MessageReactionRemoveEvent;
 import net.dv8tion.jda.api.hooks.SubscribeEvent;
 import net.dv8tion.jda.api.interactions.components.ActionRow;
 import net.dv8tion.jda.api.interactions.components.buttons.Button;
@@ -167,6 +177,65 @@ public class SuggestionListener {
         updateConfigForumIds(event);
     }
 
+    @SubscribeEvent
+    public void onThreadUpdate(@NotNull GenericChannelUpdateEvent<?> event) {
+        // Archiving, locking, renaming and tagging a post all change what the cache shows
+        if (isInSuggestionChannel(event)) {
+            NerdBotApp.getBot().getSuggestionCache().refreshSuggestion(event.getChannel().asThreadChannel());
+        }
+    }
+
+    @SubscribeEvent
+    public void onMessageReceived(@NotNull MessageReceivedEvent event) {
+        if (!isSuggestionThread(event.getChannel())) {
+            return;
+        }
+
+        ThreadChannel thread = event.getChannel().asThreadChannel();
+
+        // The post is usually created before its first message, so it is only complete once that message arrives
+        if (event.getMessageIdLong() == thread.getIdLong()) {
+            NerdBotApp.getBot().getSuggestionCache().refreshSuggestion(thread);
+        } else {
+            NerdBotApp.getBot().getSuggestionCache().bumpSuggestion(thread.getId(), event.getMessage().getTimeCreated().toInstant().toEpochMilli());
+        }
+    }
+
+    @SubscribeEvent
+    public void onMessageDelete(@NotNull MessageDeleteEvent event) {
+        refreshIfFirstMessage(event.getChannel(), event.getMessageIdLong());
+    }
+
+    @SubscribeEvent
+    public void onReactionAdd(@NotNull MessageReactionAddEvent event) {
+        countVote(event, 1);
+    }
+
+    @SubscribeEvent
+    public void onReactionRemove(@NotNull MessageReactionRemoveEvent event) {
+        countVote(event, -1);
+    }
+
+    @SubscribeEvent
+    public void onReactionRemoveAll(@NotNull MessageReactionRemoveAllEvent event) {
+        if (isFirstMessage(event.getChannel(), event.getMessageIdLong())) {
+            NerdBotApp.getBot().getSuggestionCache().clearVotes(event.getChannel().asThreadChannel(), null);
+        }
+    }
+
+    @SubscribeEvent
+    public void onReactionRemoveEmoji(@NotNull MessageReactionRemoveEmojiEvent event) {
+        if (event.getEmoji().getType() == Emoji.Type.CUSTOM && isFirstMessage(event.getChannel(), event.getMessageIdLong())) {
+            NerdBotApp.getBot().getSuggestionCache().clearVotes(event.getChannel().asThreadChannel(), event.getEmoji().asCustom().getId());
+        }
+    }
+
+    private void countVote(GenericMessageReactionEvent event, int amount) {
+        if (event.getEmoji().getType() == Emoji.Type.CUSTOM && isFirstMessage(event.getChannel(), event.getMessageIdLong())) {
+            NerdBotApp.getBot().getSuggestionCache().addVote(event.getChannel().asThreadChannel(), event.getEmoji().asCustom().getId(), amount);
+        }
+    }
+
     @SubscribeEvent
     public void onChannelDelete(ChannelDeleteEvent event) {
         if (event.getChannelType() == net.dv8tion.jda.api.entities.channel.ChannelType.FORUM) {
@@ -209,11 +278,26 @@ public class SuggestionListener {
         }
     }
 
+    // Votes and the deleted state of a suggestion come from the first message, which has the same ID as the thread
+    private void refreshIfFirstMessage(Channel channel, long messageId) {
+        if (isFirstMessage(channel, messageId)) {
+            NerdBotApp.getBot().getSuggestionCache().refreshSuggestion((ThreadChannel) channel);
+        }
+    }
+
+    private boolean isFirstMessage(Channel channel, long messageId) {
+        return channel.getIdLong() == messageId && isSuggestionThread(channel);
+    }
+
     private boolean isInSuggestionChannel(GenericChannelEvent event) {
-        if (event.getChannelType() == net.dv8tion.jda.api.entities.channel.ChannelType.GUILD_PUBLIC_THREAD) {
+        return isSuggestionThread(event.getChannel());
+    }
+
+    private boolean isSuggestionThread(Channel channel) {
+        if (channel.getType() == net.dv8tion.jda.api.entities.channel.ChannelType.GUILD_PUBLIC_THREAD) {
             SuggestionConfig suggestionConfig = NerdBotApp.getBot().getConfig().getSuggestionConfig();
             AlphaProjectConfig alphaProjectConfig = NerdBotApp.getBot().getConfig().getAlphaProjectConfig();
-            String forumChannelId = event.getChannel().asThreadChannel().getParentChannel().getId();
+            String forumChannelId = ((ThreadChannel) channel).getParentChannel().getId();
 
             return forumChannelId.equals(suggestionConfig.getForumChannelId())
                 || Util.safeArrayStream(alphaProjectConfig.getAlphaForumIds()).anyMatch(forumChannelId::equals)
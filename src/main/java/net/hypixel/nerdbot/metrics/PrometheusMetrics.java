@@ -74,15 +74,19 @@ public class PrometheusMetrics {
         .help("Total number of invites deleted")
         .labelNames("invite_code")
         .register();
-    public static final Gauge TOTAL_VOICE_CONNECTIONS_BY_USER = Gauge.build()
-        .name("voice_connections_by_user_total")
-        .help("Total number of voice connections by a user")
-        .labelNames("user_name", "channel_name")
+    public static final Counter VOICE_CONNECTIONS_AMOUNT = Counter.build()
+        .name("voice_connections_total")
+        .help("Total number of voice channel connections")
+        .labelNames("channel_name")
+        .register();
+    public static final Counter VOICE_TIME_SECONDS = Counter.build()
+        .name("voice_time_seconds_total")
+        .help("Total time spent in a voice channel in seconds")
+        .labelNames("channel_name")
         .register();
-    public static final Gauge TOTAL_VOICE_TIME_SPENT_BY_USER = Gauge.build()
-        .name("voice_time_by_user_total")
-        .help("Total time spent in a voice channel by a user")
-        .labelNames("user_name", "channel_name")
+    public static final Gauge VOICE_SESSIONS_OPEN = Gauge.build()
+        .name("voice_sessions_open")
+        .help("Number of members currently connected to a voice channel")
         .register();
     public static final Counter HTTP_REQUESTS_AMOUNT = Counter.build()
         .name("http_requests_total")
@@ -94,6 +98,51 @@ public class PrometheusMetrics {
         .help("Request latency in seconds")
         .labelNames("url")
         .register();
+    public static final Counter REPOSITORY_DOCUMENTS_LOADED = Counter.build()
+        .name("repository_documents_loaded_total")
+        .help("Total number of documents loaded from the database into a repository cache")
+        .labelNames("repository")
+        .register();
+    public static final Gauge REPOSITORY_LOAD_SECONDS = Gauge.build()
+        .name("repository_load_seconds")
+        .help("Time taken for the last full load of a repository to finish in seconds")
+        .labelNames("repository")
+        .register();
+    public static final Gauge REPOSITORY_LOAD_DOCUMENTS_PER_SECOND = Gauge.build()
+        .name("repository_load_documents_per_second")
+        .help("Documents loaded per second during the last full load of a repository")
+        .labelNames("repository")
+        .register();
+    public static final Gauge REPOSITORY_OVERFLOW_BYTES = Gauge.build()
+        .name("repository_overflow_bytes")
+        .help("Off-heap memory used by the overflow tier of a repository cache in bytes")
+        .labelNames("repository")
+        .register();
+    public static final Gauge ACTIVITY_QUEUE_SIZE = Gauge.build()
+        .name("activity_queue_size")
+        .help("Number of activity records waiting to be applied")
+        .register();
+    public static final Counter ACTIVITY_RECORDS_DROPPED = Counter.build()
+        .name("activity_records_dropped_total")
+        .help("Total number of activity records dropped because the activity queue was full")
+        .labelNames("record_type")
+        .register();
+    public static final Summary ACTIVITY_APPLY_LATENCY_SECONDS = Summary.build()
+        .name("activity_apply_latency_seconds")
+        .help("Time between an activity happening and it being applied to the user in seconds")
+        .register();
+    public static final Summary ACTIVITY_PURGED_ENTRIES = Summary.build()
+        .name("activity_purged_entries")
+        .help("Amount of activity history entries purged per run")
+        .register();
+    public static final Summary ACTIVITY_PURGED_USERS = Summary.build()
+        .name("activity_purged_users")
+        .help("Amount of users with activity history purged per run")
+        .register();
+    public static final Counter SUGGESTION_VOTE_CORRECTIONS = Counter.build()
+        .name("suggestion_vote_corrections_total")
+        .help("Amount of suggestions whose live vote counts differed from Discord when validated")
+        .register();
     private static final CollectorRegistry collectorRegistry = new CollectorRegistry();
     private static HTTPServer server;
 
@@ -133,10 +182,21 @@ public class PrometheusMetrics {
             collectorRegistry.register(SLASH_COMMANDS_AMOUNT);
             collectorRegistry.register(INVITES_CREATED_AMOUNT);
             collectorRegistry.register(INVITES_DELETED_AMOUNT);
-            collectorRegistry.register(TOTAL_VOICE_CONNECTIONS_BY_USER);
-            collectorRegistry.register(TOTAL_VOICE_TIME_SPENT_BY_USER);
+            collectorRegistry.register(VOICE_CONNECTIONS_AMOUNT);
+            collectorRegistry.register(VOICE_TIME_SECONDS);
+            collectorRegistry.register(VOICE_SESSIONS_OPEN);
             collectorRegistry.register(HTTP_REQUESTS_AMOUNT);
             collectorRegistry.register(HTTP_REQUEST_LATENCY);
+            collectorRegistry.register(REPOSITORY_DOCUMENTS_LOADED);
+            collectorRegistry.register(REPOSITORY_LOAD_SECONDS);
+            collectorRegistry.register(REPOSITORY_LOAD_DOCUMENTS_PER_SECOND);
+            collectorRegistry.register(REPOSITORY_OVERFLOW_BYTES);
+            collectorRegistry.register(ACTIVITY_QUEUE_SIZE);
+            collectorRegistry.register(ACTIVITY_RECORDS_DROPPED);
+            collectorRegistry.register(ACTIVITY_APPLY_LATENCY_SECONDS);
+            collectorRegistry.register(ACTIVITY_PURGED_ENTRIES);
+            collectorRegistry.register(ACTIVITY_PURGED_USERS);
+            collectorRegistry.register(SUGGESTION_VOTE_CORRECTIONS);
 
             log.info("Enabled Prometheus metrics!");
         } else {
@@ -150,10 +210,21 @@ public class PrometheusMetrics {
             collectorRegistry.unregister(SLASH_COMMANDS_AMOUNT);
             collectorRegistry.unregister(INVITES_CREATED_AMOUNT);
             collectorRegistry.unregister(INVITES_DELETED_AMOUNT);
-            collectorRegistry.unregister(TOTAL_VOICE_CONNECTIONS_BY_USER);
-            collectorRegistry.unregister(TOTAL_VOICE_TIME_SPENT_BY_USER);
+            collectorRegistry.unregister(VOICE_CONNECTIONS_AMOUNT);
+            collectorRegistry.unregister(VOICE_TIME_SECONDS);
+            collectorRegistry.unregister(VOICE_SESSIONS_OPEN);
             collectorRegistry.unregister(HTTP_REQUESTS_AMOUNT);
             collectorRegistry.unregister(HTTP_REQUEST_LATENCY);
+            collectorRegistry.unregister(REPOSITORY_DOCUMENTS_LOADED);
+            collectorRegistry.unregister(REPOSITORY_LOAD_SECONDS);
+            collectorRegistry.unregister(REPOSITORY_LOAD_DOCUMENTS_PER_SECOND);
+            collectorRegistry.unregister(REPOSITORY_OVERFLOW_BYTES);
+            collectorRegistry.unregister(ACTIVITY_QUEUE_SIZE);
+            collectorRegistry.unregister(ACTIVITY_RECORDS_DROPPED);
+            collectorRegistry.unregister(ACTIVITY_APPLY_LATENCY_SECONDS);
+            collectorRegistry.unregister(ACTIVITY_PURGED_ENTRIES);
+            collectorRegistry.unregister(ACTIVITY_PURGED_USERS);
+            collectorRegistry.unregister(SUGGESTION_VOTE_CORRECTIONS);
 
             log.info("Disabled Prometheus metrics!");
         }
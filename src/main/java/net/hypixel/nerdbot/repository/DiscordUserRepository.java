@@ -1,86 +1,345 @@
 package net.hypixel.nerdbot.repository;
 
 import com.mongodb.client.MongoClient;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.result.UpdateResult;
 import lombok.extern.log4j.Log4j2;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.User;
 import net.hypixel.nerdbot.api.database.model.user.DiscordUser;
+import net.hypixel.nerdbot.api.database.model.user.badge.BadgeEntry;
 import net.hypixel.nerdbot.api.database.model.user.birthday.BirthdayData;
 import net.hypixel.nerdbot.api.database.model.user.language.UserLanguage;
+import net.hypixel.nerdbot.api.database.model.user.stats.ChannelActivityEntry;
 import net.hypixel.nerdbot.api.database.model.user.stats.LastActivity;
 import net.hypixel.nerdbot.api.repository.Repository;
+import net.hypixel.nerdbot.api.repository.RepositoryIndex;
 import net.hypixel.nerdbot.util.Util;
+import net.hypixel.nerdbot.util.gson.adapter.YearMonthTypeAdapter;
+import org.bson.Document;
+import org.bson.conversions.Bson;
 
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 @Log4j2
 public class DiscordUserRepository extends Repository<DiscordUser> {
 
+    private final RepositoryIndex<DiscordUser, String> badgeIndex = addIndex(discordUser ->
+        discordUser.getBadges() == null ? List.of() : discordUser.getBadges().stream().map(BadgeEntry::getBadgeId).toList()
+    );
+    // Ordered by when each user's oldest activity falls out of its history, so purging only has to look at the front
+    private final RepositoryIndex<DiscordUser, Long> activityExpiryIndex = addSortedIndex(discordUser -> {
+        if (discordUser.getLastActivity() == null) {
+            return List.of();
+        }
+
+        long expiry = discordUser.getLastActivity().getNextActivityExpiry();
+        return expiry == Long.MAX_VALUE ? List.of() : List.of(expiry);
+    });
+    private final RepositoryIndex<DiscordUser, UUID> mojangProfileIndex = addIndex(discordUser ->
+        RepositoryIndex.single(discordUser.isProfileAssigned() ? discordUser.getMojangProfile().getUniqueId() : null)
+    );
+
     public DiscordUserRepository(MongoClient mongoClient, String databaseName) {
         super(mongoClient, databaseName, "users", "discordId", 1, TimeUnit.DAYS);
+        enableOverflowStore();
     }
 
     @Override
-    protected String getId(DiscordUser entity) {
-        return entity.getDiscordId();
-    }
+    protected boolean onDocumentLoaded(DiscordUser discordUser, boolean bulkLoad) {
+        boolean modified = false;
 
-    @Override
-    public void loadAllDocumentsIntoCache() {
-        super.loadAllDocumentsIntoCache();
+        if (discordUser.getLastActivity() == null) {
+            log.info("Last activity for " + discordUser.getDiscordId() + " was null. Setting to default values!");
+            discordUser.setLastActivity(new LastActivity());
+            modified = true;
+        }
+
+        if (discordUser.getLastActivity().getChannelActivityHistory() == null) {
+            log.info("Channel activity history for " + discordUser.getDiscordId() + " was null. Setting to default values!");
+            discordUser.getLastActivity().setChannelActivityHistory(new ArrayList<>());
+            modified = true;
+        }
 
-        getAll().forEach(discordUser -> {
-            if (discordUser.getLastActivity() == null) {
-                log.info("Last activity for " + discordUser.getDiscordId() + " was null. Setting to default values!");
-                discordUser.setLastActivity(new LastActivity());
+        for (ChannelActivityEntry channelActivityEntry : discordUser.getLastActivity().getChannelActivityHistory()) {
+            if (channelActivityEntry.getMonthlyMessageCount() == null) {
+                log.info("Monthly message count for " + discordUser.getDiscordId() + " was null. Setting to default values!");
+                channelActivityEntry.setMonthlyMessageCount(new TreeMap<>());
+                modified = true;
             }
 
-            if (discordUser.getLastActivity().getChannelActivityHistory() == null) {
-                log.info("Channel activity history for " + discordUser.getDiscordId() + " was null. Setting to default values!");
-                discordUser.getLastActivity().setChannelActivityHistory(new ArrayList<>());
+            if (channelActivityEntry.getDailyMessageCount() == null) {
+                // Messages before today were only counted per month
+                channelActivityEntry.setDailyMessageCount(new TreeMap<>());
+                channelActivityEntry.setDailyCountsSince(LocalDate.now());
+                modified = true;
             }
+        }
 
-            discordUser.getLastActivity().getChannelActivityHistory().forEach(channelActivityEntry -> {
-                if (channelActivityEntry.getMonthlyMessageCount() == null) {
-                    log.info("Monthly message count for " + discordUser.getDiscordId() + " was null. Setting to default values!");
-                    channelActivityEntry.setMonthlyMessageCount(new HashMap<>());
+        if (discordUser.getLastActivity().getChannelActivity() != null && !discordUser.getLastActivity().getChannelActivity().isEmpty()) {
+            log.info("Old channel activity for " + discordUser.getDiscordId() + " was not empty! (size: " + discordUser.getLastActivity().getChannelActivity().size() + ")");
+            discordUser.getLastActivity().getChannelActivity().forEach((channelId, messageCount) -> {
+                if (Util.getMainGuild().getTextChannelById(channelId) == null) {
+                    log.info("Channel " + channelId + " was not found in the guild! Skipping...");
+                    return;
                 }
+
+                discordUser.getLastActivity().addChannelHistory(Util.getMainGuild().getTextChannelById(channelId), messageCount, System.currentTimeMillis());
             });
+            discordUser.getLastActivity().getChannelActivity().clear();
+            discordUser.getLastActivity().setChannelActivity(null);
+            modified = true;
+        }
 
-            if (!discordUser.getLastActivity().getChannelActivity().isEmpty()) {
-                log.info("Old channel activity for " + discordUser.getDiscordId() + " was not empty! (size: " + discordUser.getLastActivity().getChannelActivity().size() + ")");
-                discordUser.getLastActivity().getChannelActivity().forEach((channelId, messageCount) -> {
-                    if (Util.getMainGuild().getTextChannelById(channelId) == null) {
-                        log.info("Channel " + channelId + " was not found in the guild! Skipping...");
-                        return;
-                    }
-
-                    discordUser.getLastActivity().addChannelHistory(Util.getMainGuild().getTextChannelById(channelId), messageCount, System.currentTimeMillis());
-                });
-                discordUser.getLastActivity().getChannelActivity().clear();
-                discordUser.getLastActivity().setChannelActivity(null);
-            }
+        modified |= discordUser.getLastActivity().purgeOldHistory() > 0;
 
-            discordUser.getLastActivity().purgeOldHistory();
+        if (discordUser.getBirthdayData() == null) {
+            log.info("Birthday data for " + discordUser.getDiscordId() + " was null. Setting to default values!");
+            discordUser.setBirthdayData(new BirthdayData());
+            modified = true;
+        }
 
-            if (discordUser.getBirthdayData() == null) {
-                log.info("Birthday data for " + discordUser.getDiscordId() + " was null. Setting to default values!");
-                discordUser.setBirthdayData(new BirthdayData());
-            }
+        if (discordUser.getLanguage() == null) {
+            log.info("Language for " + discordUser.getDiscordId() + " was null. Setting to default values!");
+            discordUser.setLanguage(UserLanguage.ENGLISH);
+            modified = true;
+        }
+
+        if (discordUser.getBadges() == null) {
+            log.info("Badges for " + discordUser.getDiscordId() + " was null. Setting to default values!");
+            discordUser.setBadges(new ArrayList<>());
+            modified = true;
+        }
+
+        // Users loaded on demand may have been evicted earlier, in which case their reminder is still scheduled
+        if (bulkLoad && discordUser.getBirthdayData().isBirthdaySet()) {
+            discordUser.scheduleBirthdayReminder(discordUser.getBirthdayData().getBirthdayThisYear());
+        }
+
+        return modified;
+    }
 
-            if (discordUser.getLanguage() == null) {
-                log.info("Language for " + discordUser.getDiscordId() + " was null. Setting to default values!");
-                discordUser.setLanguage(UserLanguage.ENGLISH);
+    /**
+     * Create a user for every member that does not have one yet and remove badges that no longer exist from every user.
+     * <br><br>
+     * Known users are read with a single query that only returns their IDs, new users are inserted in bulk and badges
+     * are removed by a single update on the database, so no member is looked up individually.
+     *
+     * @param memberIds     The IDs of the members that should have a user
+     * @param validBadgeIds The IDs of every badge that exists. Badges are not removed if this is empty.
+     */
+    public void reconcileMembers(Collection<String> memberIds, Set<String> validBadgeIds) {
+        long start = System.currentTimeMillis();
+        Set<String> knownIds = findAllIds();
+        List<DiscordUser> newUsers = memberIds.stream()
+            .filter(memberId -> !knownIds.contains(memberId))
+            .map(DiscordUser::new)
+            .toList();
+
+        int inserted = newUsers.isEmpty() ? 0 : insertAll(newUsers);
+        log.info("Created " + inserted + " new users for " + memberIds.size() + " members (" + knownIds.size() + " users already existed)");
+
+        getMongoCollection().updateMany(Filters.eq("badges", null), Updates.set("badges", List.of()));
+
+        if (validBadgeIds.isEmpty()) {
+            log.warn("No badges are loaded, skipping the removal of unknown badges");
+        } else {
+            Bson unknownBadge = Filters.nin("badgeId", validBadgeIds);
+            UpdateResult result = getMongoCollection().updateMany(Filters.elemMatch("badges", unknownBadge), Updates.pull("badges", unknownBadge));
+
+            if (result.getModifiedCount() > 0) {
+                log.info("Removed unknown badges from " + result.getModifiedCount() + " users");
             }
 
-            cacheObject(discordUser);
+            // Cached users still hold the removed badges, so take them out there too
+            for (String badgeId : Set.copyOf(badgeIndex.getKeys())) {
+                if (validBadgeIds.contains(badgeId)) {
+                    continue;
+                }
+
+                log.error("Badge '" + badgeId + "' was not found in the badge map! Removing...");
 
-            if (discordUser.getBirthdayData().isBirthdaySet()) {
-                discordUser.scheduleBirthdayReminder(discordUser.getBirthdayData().getBirthdayThisYear());
+                for (DiscordUser discordUser : getCachedObjects(badgeIndex.getIds(badgeId))) {
+                    updateIfChanged(discordUser, user -> user.getBadges().removeIf(badgeEntry -> badgeEntry.getBadgeId().equals(badgeId)));
+                }
             }
-        });
+        }
+
+        log.info("Reconciled " + memberIds.size() + " members in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Only load the users that have been active recently, or that have a birthday reminder that needs to be scheduled.
+     * Every other user is loaded on demand through {@link #findById(String)}.
+     *
+     * @param activeSince The earliest activity timestamp for a user to be considered active
+     */
+    public void loadActiveUsersIntoCache(long activeSince) {
+        log.info("Loading users active since " + activeSince + " into cache");
+
+        loadDocumentsIntoCache(Filters.or(
+            Filters.gte("lastActivity.lastGlobalActivity", activeSince),
+            Filters.ne("birthdayData.birthday", null)
+        ));
+    }
+
+    /**
+     * Rank every user by the last time they were active, starting with the least recently active
+     *
+     * @param excludedIds The IDs of users that should not be included
+     * @param skip        The amount of ranked users to skip
+     * @param limit       The maximum amount of ranked users to return
+     *
+     * @return An ordered map of user IDs to the last time they were active
+     */
+    public LinkedHashMap<String, Long> rankByLastGlobalActivity(Collection<String> excludedIds, int skip, int limit) {
+        return rankUsers("$lastActivity.lastGlobalActivity", excludedIds, skip, limit);
+    }
+
+    /**
+     * Rank every user by the total amount of messages they have sent, starting with the lowest amount
+     *
+     * @param excludedIds The IDs of users that should not be included
+     * @param skip        The amount of ranked users to skip
+     * @param limit       The maximum amount of ranked users to return
+     *
+     * @return An ordered map of user IDs to their total message count
+     */
+    public LinkedHashMap<String, Long> rankByTotalMessageCount(Collection<String> excludedIds, int skip, int limit) {
+        return rankUsers(new Document("$sum", "$lastActivity.channelActivityHistory.messageCount"), excludedIds, skip, limit);
+    }
+
+    /**
+     * Rank every user by the amount of messages they have sent in the last given amount of days, starting with the lowest amount.
+     * Windows within the last {@link ChannelActivityEntry#DAILY_RETENTION_DAYS} days are counted per day, longer windows
+     * per calendar month, including the whole month the window starts in.
+     *
+     * @param days        The amount of days to count messages in, including today
+     * @param excludedIds The IDs of users that should not be included
+     * @param skip        The amount of ranked users to skip
+     * @param limit       The maximum amount of ranked users to return
+     *
+     * @return An ordered map of user IDs to their message count in the window
+     *
+     * @see ChannelActivityEntry#getMessageCountSince(LocalDate)
+     */
+    public LinkedHashMap<String, Long> rankByMessageCount(int days, Collection<String> excludedIds, int skip, int limit) {
+        LocalDate startDate = LocalDate.now().minusDays(days - 1);
+        List<String> monthKeys = new ArrayList<>();
+        YearMonth currentMonth = YearMonth.now();
+
+        for (YearMonth month = YearMonth.from(startDate); !month.isAfter(currentMonth); month = month.plusMonths(1)) {
+            monthKeys.add(month.format(YearMonthTypeAdapter.FORMATTER));
+        }
+
+        Document channelCount = sumCounts("$$channel.monthlyMessageCount", new Document("$in", List.of("$$count.k", monthKeys)));
+
+        if (days <= ChannelActivityEntry.DAILY_RETENTION_DAYS) {
+            // Daily keys are ISO dates, so they sort the same as the days they stand for
+            String startKey = startDate.toString();
+            Document dailyCount = sumCounts("$$channel.dailyMessageCount", new Document("$gte", List.of("$$count.k", startKey)));
+
+            // Entries that only started counting per day after the window started fall back to their monthly counts
+            channelCount = new Document("$cond", List.of(
+                new Document("$and", List.of(
+                    new Document("$eq", List.of(new Document("$type", "$$channel.dailyCountsSince"), "string")),
+                    new Document("$lte", List.of("$$channel.dailyCountsSince", startKey))
+                )),
+                dailyCount,
+                channelCount
+            ));
+        }
+
+        return rankUsers(new Document("$sum", new Document("$map", new Document("input", new Document("$ifNull", List.of("$lastActivity.channelActivityHistory", List.of())))
+            .append("as", "channel")
+            .append("in", channelCount))), excludedIds, skip, limit);
+    }
+
+    /**
+     * @return An expression summing the values of the given count map whose entries match the condition, with each
+     * entry available to the condition as {@code $$count}
+     */
+    private static Document sumCounts(String counts, Document condition) {
+        Document matching = new Document("$filter", new Document("input", new Document("$objectToArray", new Document("$ifNull", List.of(counts, new Document()))))
+            .append("as", "count")
+            .append("cond", condition));
+
+        return new Document("$sum", new Document("$map", new Document("input", matching).append("as", "count").append("in", "$$count.v")));
+    }
+
+    /**
+     * Rank users with an aggregation in the database instead of walking the cache, so that users that are not
+     * currently cached are included. Changes that have not been flushed yet are not included, so the ranking can be
+     * up to one {@link net.hypixel.nerdbot.api.repository.WriteBehindQueue write-behind} interval behind.
+     */
+    private LinkedHashMap<String, Long> rankUsers(Object valueExpression, Collection<String> excludedIds, int skip, int limit) {
+        LinkedHashMap<String, Long> ranking = new LinkedHashMap<>();
+        List<Bson> pipeline = List.of(
+            Aggregates.match(Filters.nin("discordId", excludedIds)),
+            Aggregates.project(Projections.fields(
+                Projections.excludeId(),
+                Projections.include("discordId"),
+                Projections.computed("value", valueExpression)
+            )),
+            Aggregates.sort(Sorts.ascending("value", "discordId")),
+            Aggregates.skip(skip),
+            Aggregates.limit(limit)
+        );
+
+        for (Document document : getMongoCollection().aggregate(pipeline)) {
+            Number value = document.get("value", Number.class);
+            ranking.put(document.getString("discordId"), value == null ? -1L : value.longValue());
+        }
+
+        return ranking;
+    }
+
+    /**
+     * @return Every cached user with activity that is due to be purged at the given time
+     */
+    public List<DiscordUser> getUsersWithExpiredActivity(long currentTime) {
+        return getCachedObjects(activityExpiryIndex.getIds(Long.MIN_VALUE, currentTime + 1));
+    }
+
+    /**
+     * Find the user that the Mojang profile with the given UUID is linked to. Cached users are found through the index,
+     * users that are not cached are looked up by a single query that only returns their ID.
+     *
+     * @param uniqueId The UUID of the Mojang profile
+     *
+     * @return The user the profile is linked to, if any
+     */
+    public Optional<DiscordUser> findByMojangUniqueId(UUID uniqueId) {
+        Optional<DiscordUser> cachedUser = getCachedObjects(mojangProfileIndex.getIds(uniqueId)).stream().findFirst();
+        if (cachedUser.isPresent()) {
+            return cachedUser;
+        }
+
+        Document document = getMongoCollection().find(Filters.eq("mojangProfile.uniqueId", uniqueId.toString()))
+            .projection(Projections.include("discordId"))
+            .first();
+
+        if (document == null) {
+            return Optional.empty();
+        }
+
+        // The cached copy may have been relinked since it was last written
+        return Optional.ofNullable(findById(document.getString("discordId")))
+            .filter(discordUser -> discordUser.isProfileAssigned() && uniqueId.equals(discordUser.getMojangProfile().getUniqueId()));
     }
 
     public Member getMemberById(String id) {
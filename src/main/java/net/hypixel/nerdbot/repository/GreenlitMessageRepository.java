@@ -10,10 +10,6 @@ public class GreenlitMessageRepository extends Repository<GreenlitMessage> {
 
     public GreenlitMessageRepository(MongoClient mongoClient, String databaseName) {
         super(mongoClient, databaseName, "greenlit_messages", "messageId", 1, TimeUnit.DAYS);
-    }
-
-    @Override
-    protected String getId(GreenlitMessage entity) {
-        return entity.getMessageId();
+        enableOverflowStore();
     }
 }
@@ -3,15 +3,92 @@ package net.hypixel.nerdbot.repository;
 import com.mongodb.client.MongoClient;
 import net.hypixel.nerdbot.api.database.model.reminder.Reminder;
 import net.hypixel.nerdbot.api.repository.Repository;
+import net.hypixel.nerdbot.api.repository.RepositoryIndex;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class ReminderRepository extends Repository<Reminder> {
 
+    /**
+     * How far ahead reminders are given a timer. Reminders that are due later are picked up by
+     * {@link #scheduleDueReminders()} once they come within this window.
+     */
+    public static final long SCHEDULE_AHEAD = TimeUnit.MINUTES.toMillis(5);
+
+    private final RepositoryIndex<Reminder, String> userIndex = addIndex(reminder -> RepositoryIndex.single(reminder.getUserId()));
+    private final RepositoryIndex<Reminder, Long> timeIndex = addSortedIndex(reminder -> RepositoryIndex.single(reminder.getTime() == null ? null : reminder.getTime().getTime()));
+
     public ReminderRepository(MongoClient mongoClient, String databaseName) {
         super(mongoClient, databaseName, "reminders", "uuid");
     }
 
     @Override
-    protected String getId(Reminder entity) {
-        return entity.getUuid().toString();
+    protected void onRemoteChange(@Nullable Reminder previous, @Nullable Reminder current) {
+        if (previous != null && previous.getTimer() != null) {
+            previous.getTimer().cancel();
+            previous.setTimer(null);
+        }
+
+        if (current != null && current.getTime() != null && current.getTime().after(new Date())) {
+            schedule(current);
+        }
+    }
+
+    /**
+     * @return Every reminder that belongs to the user with the given ID
+     */
+    public List<Reminder> getRemindersByUser(String userId) {
+        return getCachedObjects(userIndex.getIds(userId));
+    }
+
+    /**
+     * @return Every reminder that is due between the two dates, including the start and excluding the end
+     */
+    public List<Reminder> getRemindersDueBetween(Date start, Date end) {
+        return getCachedObjects(timeIndex.getIds(start.getTime(), end.getTime()));
+    }
+
+    /**
+     * Give the reminder a timer if it is due within {@link #SCHEDULE_AHEAD} and does not have one yet. Reminders that
+     * are due later are left alone until {@link #scheduleDueReminders()} reaches them.
+     *
+     * @param reminder The reminder to schedule
+     *
+     * @return Whether the reminder was given a timer
+     */
+    public boolean schedule(Reminder reminder) {
+        if (reminder.getTime() == null || reminder.getTime().getTime() >= System.currentTimeMillis() + SCHEDULE_AHEAD) {
+            return false;
+        }
+
+        return withLock(reminder, r -> {
+            if (r.getTimer() != null) {
+                return false;
+            }
+
+            r.schedule();
+            return true;
+        });
+    }
+
+    /**
+     * Give every reminder that is due within {@link #SCHEDULE_AHEAD} a timer, using the time index so reminders that
+     * are due later are never looked at.
+     *
+     * @return The number of reminders that were given a timer
+     */
+    public int scheduleDueReminders() {
+        int scheduled = 0;
+
+        for (Reminder reminder : getRemindersDueBetween(new Date(0), new Date(System.currentTimeMillis() + SCHEDULE_AHEAD))) {
+            if (schedule(reminder)) {
+                scheduled++;
+            }
+        }
+
+        return scheduled;
     }
 }
@@ -231,9 +231,12 @@ public class Util {
     }
 
     public static Suggestion.ChannelType getSuggestionType(ForumChannel forumChannel) {
+        return getForumSuggestionType(forumChannel.getId());
+    }
+
+    public static Suggestion.ChannelType getForumSuggestionType(String parentChannelId) {
         SuggestionConfig suggestionConfig = NerdBotApp.getBot().getConfig().getSuggestionConfig();
         AlphaProjectConfig alphaProjectConfig = NerdBotApp.getBot().getConfig().getAlphaProjectConfig();
-        String parentChannelId = forumChannel.getId();
 
         if (Util.safeArrayStream(alphaProjectConfig.getAlphaForumIds()).anyMatch(parentChannelId::equals)) {
             return Suggestion.ChannelType.ALPHA;
@@ -0,0 +1,112 @@
+package net.hypixel.nerdbot.util.gson.adapter;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import net.hypixel.nerdbot.api.database.model.user.stats.ActivityBuckets;
+import net.hypixel.nerdbot.api.database.model.user.stats.ActivityHistory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes an {@link ActivityHistory} as its latest activity time and its non-empty hourly and daily buckets.
+ * Also reads the older format, an array of every activity timestamp, and counts those timestamps into buckets.
+ */
+public class ActivityHistoryTypeAdapter extends TypeAdapter<ActivityHistory> {
+
+    @Override
+    public void write(JsonWriter jsonWriter, ActivityHistory history) throws IOException {
+        if (history == null) {
+            jsonWriter.nullValue();
+            return;
+        }
+
+        synchronized (history) {
+            jsonWriter.beginObject();
+            jsonWriter.name("latest").value(history.getLatest());
+            writeBuckets(jsonWriter.name("hourly"), history.getHourly());
+            writeBuckets(jsonWriter.name("daily"), history.getDaily());
+            jsonWriter.endObject();
+        }
+    }
+
+    @Override
+    public ActivityHistory read(JsonReader jsonReader) throws IOException {
+        ActivityHistory history = new ActivityHistory();
+
+        switch (jsonReader.peek()) {
+            case NULL -> jsonReader.nextNull();
+            case BEGIN_ARRAY -> {
+                List<Long> timestamps = new ArrayList<>();
+
+                jsonReader.beginArray();
+                while (jsonReader.hasNext()) {
+                    timestamps.add(jsonReader.nextLong());
+                }
+                jsonReader.endArray();
+
+                // Oldest first so that the buckets only move forward
+                timestamps.stream().sorted().forEach(history::add);
+            }
+            default -> {
+                jsonReader.beginObject();
+                while (jsonReader.hasNext()) {
+                    switch (jsonReader.nextName()) {
+                        case "latest" -> history.setLatest(jsonReader.nextLong());
+                        case "hourly" -> readBuckets(jsonReader, history.getHourly());
+                        case "daily" -> readBuckets(jsonReader, history.getDaily());
+                        default -> jsonReader.skipValue();
+                    }
+                }
+                jsonReader.endObject();
+            }
+        }
+
+        return history;
+    }
+
+    private void writeBuckets(JsonWriter jsonWriter, ActivityBuckets buckets) throws IOException {
+        jsonWriter.beginObject();
+        jsonWriter.name("newest").value(buckets.getNewestBucket());
+        jsonWriter.name("counts").beginArray();
+        for (int count : buckets.toCounts()) {
+            jsonWriter.value(count);
+        }
+        jsonWriter.endArray();
+        jsonWriter.endObject();
+    }
+
+    private void readBuckets(JsonReader jsonReader, ActivityBuckets buckets) throws IOException {
+        long newest = 0L;
+        int[] counts = new int[0];
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            switch (jsonReader.nextName()) {
+                case "newest" -> newest = jsonReader.nextLong();
+                case "counts" -> {
+                    int size = 0;
+
+                    jsonReader.beginArray();
+                    while (jsonReader.hasNext()) {
+                        if (size == counts.length) {
+                            counts = Arrays.copyOf(counts, Math.max(8, size * 2));
+                        }
+
+                        counts[size++] = jsonReader.nextInt();
+                    }
+                    jsonReader.endArray();
+
+                    counts = Arrays.copyOf(counts, size);
+                }
+                default -> jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+
+        buckets.restore(newest, counts);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,99 @@
+package net.hypixel.nerdbot.util.gson.adapter;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import net.hypixel.nerdbot.api.database.model.user.stats.ChannelActivityEntry;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Writes a {@link ChannelActivityEntry} with its monthly counts keyed by {@code MM-yyyy} and its daily counts keyed by
+ * ISO date. Missing maps are read as null so that they can be migrated once the entry is loaded.
+ */
+public class ChannelActivityEntryTypeAdapter extends TypeAdapter<ChannelActivityEntry> {
+
+    @Override
+    public void write(JsonWriter jsonWriter, ChannelActivityEntry entry) throws IOException {
+        if (entry == null) {
+            jsonWriter.nullValue();
+            return;
+        }
+
+        jsonWriter.beginObject();
+        jsonWriter.name("channelId").value(entry.getChannelId());
+        jsonWriter.name("lastKnownDisplayName").value(entry.getLastKnownDisplayName());
+        jsonWriter.name("messageCount").value(entry.getMessageCount());
+        jsonWriter.name("lastMessageTimestamp").value(entry.getLastMessageTimestamp());
+        writeCounts(jsonWriter.name("monthlyMessageCount"), entry.getMonthlyMessageCount(), month -> month.format(YearMonthTypeAdapter.FORMATTER));
+        writeCounts(jsonWriter.name("dailyMessageCount"), entry.getDailyMessageCount(), LocalDate::toString);
+        jsonWriter.name("dailyCountsSince").value(entry.getDailyCountsSince() == null ? null : entry.getDailyCountsSince().toString());
+        jsonWriter.endObject();
+    }
+
+    @Override
+    public ChannelActivityEntry read(JsonReader jsonReader) throws IOException {
+        if (jsonReader.peek() == JsonToken.NULL) {
+            jsonReader.nextNull();
+            return null;
+        }
+
+        ChannelActivityEntry entry = new ChannelActivityEntry(null, null, 0, -1L, null, null, null);
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+
+            if (jsonReader.peek() == JsonToken.NULL) {
+                jsonReader.nextNull();
+                continue;
+            }
+
+            switch (name) {
+                case "channelId" -> entry.setChannelId(jsonReader.nextString());
+                case "lastKnownDisplayName" -> entry.setLastKnownDisplayName(jsonReader.nextString());
+                case "messageCount" -> entry.setMessageCount(jsonReader.nextInt());
+                case "lastMessageTimestamp" -> entry.setLastMessageTimestamp(jsonReader.nextLong());
+                case "monthlyMessageCount" -> entry.setMonthlyMessageCount(readCounts(jsonReader, key -> YearMonth.parse(key, YearMonthTypeAdapter.FORMATTER)));
+                case "dailyMessageCount" -> entry.setDailyMessageCount(readCounts(jsonReader, LocalDate::parse));
+                case "dailyCountsSince" -> entry.setDailyCountsSince(LocalDate.parse(jsonReader.nextString()));
+                default -> jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+
+        return entry;
+    }
+
+    private <K> void writeCounts(JsonWriter jsonWriter, Map<K, Integer> counts, Function<K, String> keyWriter) throws IOException {
+        if (counts == null) {
+            jsonWriter.nullValue();
+            return;
+        }
+
+        jsonWriter.beginObject();
+        for (Map.Entry<K, Integer> count : counts.entrySet()) {
+            jsonWriter.name(keyWriter.apply(count.getKey())).value(count.getValue());
+        }
+        jsonWriter.endObject();
+    }
+
+    private <K extends Comparable<K>> NavigableMap<K, Integer> readCounts(JsonReader jsonReader, Function<String, K> keyReader) throws IOException {
+        NavigableMap<K, Integer> counts = new TreeMap<>();
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            counts.put(keyReader.apply(jsonReader.nextName()), jsonReader.nextInt());
+        }
+        jsonReader.endObject();
+
+        return counts;
+    }
+}
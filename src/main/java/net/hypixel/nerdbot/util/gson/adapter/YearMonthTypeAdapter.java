@@ -0,0 +1,32 @@
+package net.hypixel.nerdbot.util.gson.adapter;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Writes months as {@code MM-yyyy}, the format used for the keys of monthly message counts
+ */
+public class YearMonthTypeAdapter extends TypeAdapter<YearMonth> {
+
+    public static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("MM-yyyy");
+
+    @Override
+    public void write(JsonWriter jsonWriter, YearMonth yearMonth) throws IOException {
+        if (yearMonth == null) {
+            jsonWriter.nullValue();
+            return;
+        }
+
+        jsonWriter.value(yearMonth.format(FORMATTER));
+    }
+
+    @Override
+    public YearMonth read(JsonReader jsonReader) throws IOException {
+        return YearMonth.parse(jsonReader.nextString(), FORMATTER);
+    }
+}
\ No newline at end of file